@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Latency of event delivery from background thread to main thread subscriber on device:
+ * bus posting through main thread handler compared to broadcast used before the bus
+ * (and still used to bridge logger process).
+ * Numbers are reported in log (tag EventBusBenchmark), they depend on device and load.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class EventBusBenchmarkTest {
+
+    private static final String TAG = "EventBusBenchmark";
+    private static final String MARKER = "benchmark";
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final Semaphore delivered = new Semaphore(0);
+    private volatile long deliveredNanos;
+
+    private Context context;
+    private final EventBus bus = EventBus.getInstance();
+
+    /**
+     * Listener stamping delivery of benchmark events, called on main thread
+     */
+    private final EventBus.Listener listener = event -> {
+        if (MARKER.equals(event.getMessage())) {
+            deliveredNanos = System.nanoTime();
+            delivered.release();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        bus.subscribe(context, listener);
+    }
+
+    @After
+    public void tearDown() {
+        bus.unsubscribe(context, listener);
+    }
+
+    @Test
+    public void postLatencyComparedToBroadcast() throws InterruptedException {
+        final EventBus.Event event = new EventBus.Event(EventBus.Type.SYNC_DONE, 0, 0, 0, MARKER);
+        // instrumentation thread is not main thread, bus posts to main thread handler
+        measure(event, false, 200);
+        final long[] post = measure(event, false, 2000);
+        measure(event, true, 20);
+        final long[] broadcast = measure(event, true, 200);
+        report("bus post", post);
+        report("broadcast", broadcast);
+    }
+
+    /**
+     * Publish events one by one, waiting for each to be delivered
+     * @param event Event
+     * @param isBroadcast Publish with broadcast instead of posting to bus
+     * @param count Number of events
+     * @return Latencies (nanoseconds), sorted
+     * @throws InterruptedException Interrupted
+     */
+    private long[] measure(EventBus.Event event, boolean isBroadcast, int count) throws InterruptedException {
+        final long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            final long start = System.nanoTime();
+            if (isBroadcast) {
+                bus.postRemote(context, event);
+            } else {
+                bus.post(event);
+            }
+            assertTrue("event " + i + " not delivered", delivered.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            latencies[i] = deliveredNanos - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Log latency statistics
+     * @param name Path name
+     * @param latencies Sorted latencies (nanoseconds)
+     */
+    private static void report(String name, long[] latencies) {
+        long sum = 0;
+        for (long latency : latencies) {
+            sum += latency;
+        }
+        final String message = String.format(Locale.US, "%s: mean %.1f us, median %.1f us, p90 %.1f us, max %.1f us (%d events)",
+                name, sum / 1000d / latencies.length,
+                latencies[latencies.length / 2] / 1000d,
+                latencies[latencies.length * 9 / 10] / 1000d,
+                latencies[latencies.length - 1] / 1000d,
+                latencies.length);
+        Log.i(TAG, message);
+        System.out.println(message);
+    }
+}
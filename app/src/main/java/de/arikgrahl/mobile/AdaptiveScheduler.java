@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Speed-adaptive location updates interval.
+ * Interval is chosen to keep roughly constant spacing between fixes,
+ * bounded by user minimum and maximum. Intervals are quantized to powers of two
+ * of minimum interval, so change requires at least twofold speed difference.
+ * Shorter interval is applied immediately, longer one only after it is confirmed
+ * by several consecutive fixes.
+ */
+
+class AdaptiveScheduler {
+
+    // target distance between fixes (meters)
+    private static final double SPACING_METERS = 50;
+    // below this speed (m/s) device is treated as stopped
+    private static final float STOPPED_SPEED = 0.5f;
+    // consecutive fixes required before interval is made longer
+    private static final int CONFIRM_FIXES = 3;
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    private long intervalMillis;
+    private long pendingMillis = 0;
+    private int pendingCount = 0;
+
+    /**
+     * Constructor
+     * @param minIntervalMillis Shortest interval (milliseconds)
+     * @param maxIntervalMillis Longest interval (milliseconds)
+     */
+    AdaptiveScheduler(long minIntervalMillis, long maxIntervalMillis) {
+        this.minIntervalMillis = Math.max(minIntervalMillis, 1000);
+        this.maxIntervalMillis = Math.max(maxIntervalMillis, this.minIntervalMillis);
+        intervalMillis = this.minIntervalMillis;
+    }
+
+    /**
+     * Offer speed reported by new fix
+     * @param speed Speed (m/s)
+     * @return True if interval changed
+     */
+    boolean offer(float speed) {
+        final long target = getTargetInterval(speed);
+        if (target == intervalMillis) {
+            pendingCount = 0;
+            return false;
+        }
+        if (target > intervalMillis) {
+            if (target != pendingMillis) {
+                pendingMillis = target;
+                pendingCount = 0;
+            }
+            if (++pendingCount < CONFIRM_FIXES) {
+                return false;
+            }
+        }
+        intervalMillis = target;
+        pendingCount = 0;
+        return true;
+    }
+
+    /**
+     * Get current interval
+     * @return Interval (milliseconds)
+     */
+    long getInterval() {
+        return intervalMillis;
+    }
+
+    /**
+     * Get quantized interval for given speed
+     * @param speed Speed (m/s)
+     * @return Interval (milliseconds)
+     */
+    private long getTargetInterval(float speed) {
+        if (speed < STOPPED_SPEED) {
+            return maxIntervalMillis;
+        }
+        final double ideal = SPACING_METERS * 1000 / speed;
+        if (ideal >= maxIntervalMillis) {
+            return maxIntervalMillis;
+        }
+        long interval = minIntervalMillis;
+        while (interval * 2 <= ideal) {
+            interval *= 2;
+        }
+        return interval;
+    }
+}
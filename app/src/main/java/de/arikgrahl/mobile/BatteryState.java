@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Battery state cache kept current by battery changed broadcasts.
+ * Values may be read from any thread without locking.
+ */
+
+class BatteryState extends BroadcastReceiver {
+
+    private static final String TAG = BatteryState.class.getSimpleName();
+
+    static final String STATUS_CHARGING = "charging";
+    static final String STATUS_DISCHARGING = "discharging";
+
+    private volatile String status = STATUS_DISCHARGING;
+    private volatile float level = -1;
+    private boolean isRegistered = false;
+    private Listener listener = null;
+
+    /**
+     * Listener notified about battery changes on receiver handler thread
+     */
+    interface Listener {
+        void onBatteryChanged();
+    }
+
+    /**
+     * Set change listener
+     * @param listener Listener, null to remove
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start receiving battery updates.
+     * Initializes state from sticky broadcast.
+     *
+     * @param context Context
+     * @param handler Handler for receiver callbacks
+     */
+    void register(Context context, Handler handler) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        Intent battery = context.registerReceiver(this, filter, null, handler);
+        isRegistered = true;
+        if (battery != null) {
+            update(battery);
+        }
+    }
+
+    /**
+     * Stop receiving battery updates, if registered
+     *
+     * @param context Context
+     */
+    void unregister(Context context) {
+        if (isRegistered) {
+            context.unregisterReceiver(this);
+            isRegistered = false;
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent != null && Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+            update(intent);
+            if (listener != null) {
+                listener.onBatteryChanged();
+            }
+        }
+    }
+
+    /**
+     * Update cached values from battery changed intent
+     * @param battery Intent
+     */
+    private void update(Intent battery) {
+        int batteryStatus = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if (batteryStatus == BatteryManager.BATTERY_STATUS_CHARGING ||
+            batteryStatus == BatteryManager.BATTERY_STATUS_FULL) {
+            status = STATUS_CHARGING;
+        } else {
+            status = STATUS_DISCHARGING;
+        }
+        int batteryLevel = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        level = batteryLevel * 100 / (float) scale;
+        if (Logger.DEBUG) { Log.d(TAG, "[battery " + status + ": " + level + "]"); }
+    }
+
+    /**
+     * Get battery status
+     * @return "charging" or "discharging"
+     */
+    String getStatus() {
+        return status;
+    }
+
+    /**
+     * Get battery level
+     * @return Level in percents
+     */
+    float getLevel() {
+        return level;
+    }
+}
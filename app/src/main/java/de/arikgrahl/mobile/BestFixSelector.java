@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.location.Location;
+
+/**
+ * Selection of the most accurate fix within logging interval.
+ * Candidates are copied into single reused location.
+ */
+
+class BestFixSelector {
+
+    private Location best = null;
+    private boolean hasCandidate = false;
+
+    /**
+     * Offer candidate fix
+     * @param loc Location
+     * @return True if this is first candidate in interval
+     */
+    boolean offer(Location loc) {
+        final boolean isFirst = !hasCandidate;
+        if (isFirst || isBetter(loc)) {
+            if (best == null) {
+                best = new Location(loc);
+            } else {
+                best.set(loc);
+            }
+        }
+        hasCandidate = true;
+        return isFirst;
+    }
+
+    /**
+     * Finish interval and get best candidate.
+     * Returned location is reused by next interval.
+     * @return Best location, null if no candidates
+     */
+    Location take() {
+        if (!hasCandidate) {
+            return null;
+        }
+        hasCandidate = false;
+        return best;
+    }
+
+    /**
+     * Check whether location is more accurate than current best
+     * @param loc Location
+     * @return True if better
+     */
+    private boolean isBetter(Location loc) {
+        if (!loc.hasAccuracy()) {
+            return false;
+        }
+        return !best.hasAccuracy() || loc.getAccuracy() < best.getAccuracy();
+    }
+}
@@ -14,6 +14,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.location.Location;
 import android.util.Log;
 
@@ -21,6 +22,9 @@ import androidx.annotation.Nullable;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -29,15 +33,39 @@ import java.util.TimeZone;
  *
  */
 
-class DbAccess {
+class DbAccess implements SampleStore {
 
     private static int openCount;
     private static DbAccess sInstance;
 
     private static SQLiteDatabase db;
     private static DbHelper mDbHelper;
+    private static final DbWriter writer = DbWriter.getInstance();
+    private static final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    // compiled statements of frequent writes, valid while database is open
+    private static final EnumMap<SensorChannel, SQLiteStatement> sampleInserts = new EnumMap<>(SensorChannel.class);
+    private static SQLiteStatement compressionUpdate;
+    private static SQLiteStatement simplificationUpdate;
+    private static SQLiteStatement spectrumInsert;
+    private static SQLiteStatement segmentUpdate;
     private static final String TAG = DbAccess.class.getSimpleName();
 
+    // arguments of preallocated compression update task
+    private final Runnable compressionTask = this::writeTrackCompression;
+    private long compressionSamples;
+    private long compressionStoredSamples;
+    // arguments of preallocated simplification update task
+    private final Runnable simplificationTask = this::writeTrackSimplification;
+    private long simplificationFixes;
+    private double simplificationMaxDeviation;
+    // arguments of preallocated spectrum insert task
+    private final Runnable spectrumTask = this::writeSpectrumValues;
+    private final StringBuilder spectrumText = new StringBuilder();
+    private long spectrumTime;
+    private float spectrumRate;
+    private float spectrumDominant;
+    private float[] spectrumEnergies;
+
     /**
      * Private constructor
      */
@@ -56,15 +84,20 @@ class DbAccess {
     }
 
     /**
-     * Opens database
+     * Opens database.
+     * Connection is shared and stays open after last close,
+     * so it is only opened again after it was released.
      * @param context Context
      */
     void open(Context context) {
         synchronized (DbAccess.class) {
-            if (openCount++ == 0) {
+            openCount++;
+            metrics.onConnection(PipelineMetrics.Connection.ACQUIRED);
+            if (db == null) {
                 if (Logger.DEBUG) { Log.d(TAG, "[open]"); }
                 mDbHelper = DbHelper.getInstance(context.getApplicationContext());
                 db = mDbHelper.getWritableDatabase();
+                metrics.onConnection(PipelineMetrics.Connection.OPENED);
             }
             if (Logger.DEBUG) { Log.d(TAG, "[+openCount = " + openCount + "]"); }
         }
@@ -74,10 +107,106 @@ class DbAccess {
      * Write location to database.
      *
      * @param loc Location
+     * @param batteryStatus Battery status
+     * @param batteryLevel Battery level
+     * @param filteredLatitude Filtered latitude, NaN if not available
+     * @param filteredLongitude Filtered longitude, NaN if not available
+     * @param segment Track segment
+     * @param distance Distance from previous position in segment (meters)
+     * @return True if written
      */
-    void writeLocation(Location loc, String batteryStatus, float batteryLevel) {
+    boolean writeLocation(Location loc, String batteryStatus, float batteryLevel,
+                          double filteredLatitude, double filteredLongitude, int segment, float distance) {
         if (Logger.DEBUG) { Log.d(TAG, "[writeLocation]"); }
-        ContentValues values = new ContentValues();
+        return writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            putLocation(values, loc, batteryStatus, batteryLevel, filteredLatitude, filteredLongitude);
+            values.put(DbContract.Positions.COLUMN_SEGMENT, segment);
+            db.insert(DbContract.Positions.TABLE_NAME, null, values);
+            updateSegment(segment, loc.getTime() / 1000, distance);
+        });
+    }
+
+    /**
+     * Write batch of locations to database in one writer transaction.
+     *
+     * @param batch Locations batch
+     * @return True if written
+     */
+    boolean writeLocations(LocationBatch batch) {
+        if (Logger.DEBUG) { Log.d(TAG, "[writeLocations: " + batch.size() + "]"); }
+        return writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < batch.size(); i++) {
+                values.clear();
+                putLocation(values, batch.getLocation(i), batch.getBatteryStatus(i), batch.getBatteryLevel(i),
+                        batch.getFilteredLatitude(i), batch.getFilteredLongitude(i));
+                values.put(DbContract.Positions.COLUMN_SEGMENT, batch.getSegment(i));
+                db.insert(DbContract.Positions.TABLE_NAME, null, values);
+                updateSegment(batch.getSegment(i), batch.getLocation(i).getTime() / 1000, batch.getDistance(i));
+            }
+        });
+    }
+
+    /**
+     * Add position to segment statistics, create segment if needed.
+     * Must be called inside transaction.
+     *
+     * @param segment Segment
+     * @param time Position time (seconds)
+     * @param distance Distance from previous position in segment (meters)
+     */
+    private void updateSegment(int segment, long time, float distance) {
+        final int updated;
+        synchronized (sampleInserts) {
+            if (segmentUpdate == null) {
+                segmentUpdate = db.compileStatement("UPDATE " + DbContract.Segments.TABLE_NAME + " SET " +
+                        DbContract.Segments.COLUMN_END + "=?," +
+                        DbContract.Segments.COLUMN_COUNT + "=" + DbContract.Segments.COLUMN_COUNT + "+1," +
+                        DbContract.Segments.COLUMN_DISTANCE + "=" + DbContract.Segments.COLUMN_DISTANCE + "+? " +
+                        "WHERE " + DbContract.Segments._ID + "=?");
+            }
+            segmentUpdate.bindLong(1, time);
+            segmentUpdate.bindDouble(2, distance);
+            segmentUpdate.bindLong(3, segment);
+            updated = segmentUpdate.executeUpdateDelete();
+        }
+        if (updated == 0) {
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Segments._ID, segment);
+            values.put(DbContract.Segments.COLUMN_START, time);
+            values.put(DbContract.Segments.COLUMN_END, time);
+            values.put(DbContract.Segments.COLUMN_COUNT, 1);
+            values.put(DbContract.Segments.COLUMN_DISTANCE, distance);
+            db.insert(DbContract.Segments.TABLE_NAME, null, values);
+        }
+    }
+
+    /**
+     * Get result set containing last stored position
+     *
+     * @return Result set
+     */
+    Cursor getLastPosition() {
+        return db.query(DbContract.Positions.TABLE_NAME,
+                new String[] {"*"},
+                null, null, null, null,
+                DbContract.Positions._ID + " DESC",
+                "1");
+    }
+
+    /**
+     * Fill content values with location data
+     *
+     * @param values Content values
+     * @param loc Location
+     * @param batteryStatus Battery status
+     * @param batteryLevel Battery level
+     * @param filteredLatitude Filtered latitude, NaN if not available
+     * @param filteredLongitude Filtered longitude, NaN if not available
+     */
+    private static void putLocation(ContentValues values, Location loc, String batteryStatus, float batteryLevel,
+                                    double filteredLatitude, double filteredLongitude) {
         values.put(DbContract.Positions.COLUMN_TIME, loc.getTime() / 1000);
         values.put(DbContract.Positions.COLUMN_LATITUDE, loc.getLatitude());
         values.put(DbContract.Positions.COLUMN_LONGITUDE, loc.getLongitude());
@@ -96,17 +225,123 @@ class DbAccess {
             values.put(DbContract.Positions.COLUMN_ACCURACY, loc.getAccuracy());
         }
         values.put(DbContract.Positions.COLUMN_PROVIDER, loc.getProvider());
+        if (!Double.isNaN(filteredLatitude) && !Double.isNaN(filteredLongitude)) {
+            values.put(DbContract.Positions.COLUMN_FILTERED_LATITUDE, filteredLatitude);
+            values.put(DbContract.Positions.COLUMN_FILTERED_LONGITUDE, filteredLongitude);
+        }
+    }
+
+    /**
+     * Execute write task on database writer and wait until it is committed.
+     * Allows callers to keep preallocated task instead of allocating one per write.
+     *
+     * @param task Task calling write methods
+     * @return True if committed
+     */
+    @Override
+    public boolean write(Runnable task) {
+        return writer.run(db, task);
+    }
+
+    /**
+     * Write batch of sensor samples to database.
+     * Must be called from write task (see {@link #write}), so that it is part of writer transaction.
+     *
+     * @param channel Sensor channel
+     * @param times Sample times (UTC milliseconds)
+     * @param values Sample values, channel values count per sample
+     * @param count Number of samples
+     */
+    @Override
+    public void writeSamples(SensorChannel channel, long[] times, float[] values, int count) {
+        final int valuesCount = channel.getValuesCount();
+        final SQLiteStatement insert = getSampleInsert(channel);
+        for (int i = 0; i < count; i++) {
+            insert.bindLong(1, times[i]);
+            for (int j = 0; j < valuesCount; j++) {
+                insert.bindDouble(j + 2, values[i * valuesCount + j]);
+            }
+            insert.executeInsert();
+        }
+    }
 
-        db.insert(DbContract.Positions.TABLE_NAME, null, values);
+    /**
+     * Get compiled insert statement for sensor channel samples.
+     * Statement is compiled once per open database, so that writing samples
+     * does not allocate content values nor boxed values.
+     *
+     * @param channel Sensor channel
+     * @return Statement binding time and channel values
+     */
+    private static SQLiteStatement getSampleInsert(SensorChannel channel) {
+        synchronized (sampleInserts) {
+            SQLiteStatement insert = sampleInserts.get(channel);
+            if (insert == null) {
+                final String[] columns = {
+                        DbContract.Samples.COLUMN_X,
+                        DbContract.Samples.COLUMN_Y,
+                        DbContract.Samples.COLUMN_Z
+                };
+                StringBuilder sql = new StringBuilder("INSERT INTO ").append(channel.getTableName())
+                        .append(" (").append(DbContract.Samples.COLUMN_TIME);
+                StringBuilder params = new StringBuilder("?");
+                for (int j = 0; j < channel.getValuesCount(); j++) {
+                    sql.append(",").append(columns[j]);
+                    params.append(",?");
+                }
+                sql.append(") VALUES (").append(params).append(")");
+                insert = db.compileStatement(sql.toString());
+                sampleInserts.put(channel, insert);
+            }
+            return insert;
+        }
+    }
+
+    /**
+     * Write vibration spectrum to database.
+     *
+     * @param time Time of window end (UTC milliseconds)
+     * @param rate Measured sampling rate (Hz)
+     * @param dominant Dominant frequency (Hz)
+     * @param energies Band energies
+     */
+    void writeSpectrum(long time, float rate, float dominant, float[] energies) {
+        synchronized (spectrumTask) {
+            spectrumTime = time;
+            spectrumRate = rate;
+            spectrumDominant = dominant;
+            spectrumEnergies = energies;
+            writer.run(db, spectrumTask);
+            spectrumEnergies = null;
+        }
     }
 
-    void writeAcceleration(Long time, float x, float y, float z) {
-        ContentValues values = new ContentValues();
-        values.put(DbContract.Accelerations.COLUMN_TIME, time);
-        values.put(DbContract.Accelerations.COLUMN_X, x);
-        values.put(DbContract.Accelerations.COLUMN_Y, y);
-        values.put(DbContract.Accelerations.COLUMN_Z, z);
-        db.insert(DbContract.Accelerations.TABLE_NAME, null, values);
+    /**
+     * Insert stored spectrum arguments, called on database writer
+     */
+    private void writeSpectrumValues() {
+        spectrumText.setLength(0);
+        for (int i = 0; i < spectrumEnergies.length; i++) {
+            if (i > 0) {
+                spectrumText.append(',');
+            }
+            spectrumText.append(spectrumEnergies[i]);
+        }
+        synchronized (sampleInserts) {
+            if (spectrumInsert == null) {
+                spectrumInsert = db.compileStatement("INSERT INTO " + DbContract.Spectra.TABLE_NAME + " (" +
+                        DbContract.Spectra.COLUMN_TIME + "," +
+                        DbContract.Spectra.COLUMN_RATE + "," +
+                        DbContract.Spectra.COLUMN_DOMINANT + "," +
+                        DbContract.Spectra.COLUMN_ENERGIES + ") VALUES (?,?,?,?)");
+            }
+            spectrumInsert.bindLong(1, spectrumTime);
+            spectrumInsert.bindDouble(2, spectrumRate);
+            spectrumInsert.bindDouble(3, spectrumDominant);
+            // energies column keeps text format of original schema
+            spectrumInsert.bindString(4, spectrumText.toString());
+            spectrumInsert.executeInsert();
+        }
     }
 
     /**
@@ -135,13 +370,52 @@ class DbAccess {
                 DbContract.Positions._ID);
     }
 
-    Cursor getUnsyncedAccelerations() {
-        return db.query(DbContract.Accelerations.TABLE_NAME,
+    /**
+     * Get result set containing sensor samples marked as not synchronized.
+     *
+     * @param channel Sensor channel
+     * @return Result set
+     */
+    Cursor getUnsyncedSamples(SensorChannel channel) {
+        return db.query(channel.getTableName(),
+                new String[] {"*"},
+                DbContract.Samples.COLUMN_SYNCED + "=?",
+                new String[] {"0"},
+                null, null,
+                DbContract.Samples._ID);
+    }
+
+    /**
+     * Get result set containing vibration spectra marked as not synchronized.
+     *
+     * @return Result set
+     */
+    Cursor getUnsyncedSpectra() {
+        return db.query(DbContract.Spectra.TABLE_NAME,
                 new String[] {"*"},
-                DbContract.Accelerations.COLUMN_SYNCED + "=?",
+                DbContract.Spectra.COLUMN_SYNCED + "=?",
                 new String[] {"0"},
                 null, null,
-                DbContract.Accelerations._ID);
+                DbContract.Spectra._ID);
+    }
+
+    /**
+     * Get result set containing sensor samples within time range, ordered by time.
+     * Range lookup uses sample time index. To join samples to position,
+     * convert position time with {@link DbContract.Positions#toSampleTime}.
+     *
+     * @param channel Sensor channel
+     * @param from Range start (UTC milliseconds, inclusive)
+     * @param to Range end (UTC milliseconds, exclusive)
+     * @return Result set
+     */
+    Cursor getSamples(SensorChannel channel, long from, long to) {
+        return db.query(channel.getTableName(),
+                new String[] {"*"},
+                DbContract.Samples.COLUMN_TIME + ">=? AND " + DbContract.Samples.COLUMN_TIME + "<?",
+                new String[] { String.valueOf(from), String.valueOf(to) },
+                null, null,
+                DbContract.Samples.COLUMN_TIME);
     }
 
     /**
@@ -172,15 +446,17 @@ class DbAccess {
      * @param error Error message
      */
     void setError(String error) {
-        ContentValues values = new ContentValues();
-        values.put(DbContract.Positions.COLUMN_ERROR, error);
-        db.update(DbContract.Positions.TABLE_NAME,
-                values,
-                DbContract.Positions._ID +
-                        "=(SELECT MIN(" + DbContract.Positions._ID + ") " +
-                        "FROM " + DbContract.Positions.TABLE_NAME + " " +
-                        "WHERE " + DbContract.Positions.COLUMN_SYNCED + "=?)",
-                new String[] { "0" });
+        writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Positions.COLUMN_ERROR, error);
+            db.update(DbContract.Positions.TABLE_NAME,
+                    values,
+                    DbContract.Positions._ID +
+                            "=(SELECT MIN(" + DbContract.Positions._ID + ") " +
+                            "FROM " + DbContract.Positions.TABLE_NAME + " " +
+                            "WHERE " + DbContract.Positions.COLUMN_SYNCED + "=?)",
+                    new String[] { "0" });
+        });
     }
 
     /**
@@ -189,25 +465,52 @@ class DbAccess {
      * @param id Position id
      */
     void setSynced(int id) {
-        ContentValues values = new ContentValues();
-        values.put(DbContract.Positions.COLUMN_SYNCED, "1");
-        values.putNull(DbContract.Positions.COLUMN_ERROR);
-        db.update(DbContract.Positions.TABLE_NAME,
-                values,
-                DbContract.Positions._ID + "=?",
-                new String[] { String.valueOf(id) });
-    }
-
-    void setSyncedAcceleration(int[] ids) {
-        for (int i = 0; i < 10; i++) {
-            int id = ids[i];
+        writer.run(db, () -> {
             ContentValues values = new ContentValues();
-            values.put(DbContract.Accelerations.COLUMN_SYNCED, "1");
-            db.update(DbContract.Accelerations.TABLE_NAME,
+            values.put(DbContract.Positions.COLUMN_SYNCED, "1");
+            values.putNull(DbContract.Positions.COLUMN_ERROR);
+            db.update(DbContract.Positions.TABLE_NAME,
                     values,
                     DbContract.Positions._ID + "=?",
                     new String[] { String.valueOf(id) });
-        }
+        });
+    }
+
+    /**
+     * Mark range of sensor samples as synchronized.
+     * Samples are uploaded in id order, so all not synchronized samples
+     * within the range belong to uploaded batch.
+     *
+     * @param channel Sensor channel
+     * @param firstId First sample id
+     * @param lastId Last sample id
+     */
+    void setSyncedSamples(SensorChannel channel, int firstId, int lastId) {
+        writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Samples.COLUMN_SYNCED, "1");
+            db.update(channel.getTableName(),
+                    values,
+                    DbContract.Samples._ID + " BETWEEN ? AND ?",
+                    new String[] { String.valueOf(firstId), String.valueOf(lastId) });
+        });
+    }
+
+    /**
+     * Mark range of vibration spectra as synchronized.
+     *
+     * @param firstId First spectrum id
+     * @param lastId Last spectrum id
+     */
+    void setSyncedSpectra(int firstId, int lastId) {
+        writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Spectra.COLUMN_SYNCED, "1");
+            db.update(DbContract.Spectra.TABLE_NAME,
+                    values,
+                    DbContract.Spectra._ID + " BETWEEN ? AND ?",
+                    new String[] { String.valueOf(firstId), String.valueOf(lastId) });
+        });
     }
 
     /**
@@ -238,17 +541,21 @@ class DbAccess {
         return result;
     }
 
-    int countUnsyncedAccelerations() {
-        Cursor count = db.query(DbContract.Accelerations.TABLE_NAME,
-                new String[] {"COUNT(*)"},
-                DbContract.Positions.COLUMN_SYNCED + "=?",
-                new String[] {"0"},
-                null, null, null);
+    /**
+     * Get number of not synchronized sensor samples in all channels and vibration spectra.
+     *
+     * @return Count
+     */
+    int countUnsyncedSamples() {
         int result = 0;
-        if (count.moveToFirst()) {
-            result = count.getInt(0);
+        for (SensorChannel channel : SensorChannel.values()) {
+            result += DatabaseUtils.queryNumEntries(db, channel.getTableName(),
+                    DbContract.Samples.COLUMN_SYNCED + "=?",
+                    new String[] {"0"});
         }
-        count.close();
+        result += DatabaseUtils.queryNumEntries(db, DbContract.Spectra.TABLE_NAME,
+                DbContract.Spectra.COLUMN_SYNCED + "=?",
+                new String[] {"0"});
         return result;
     }
 
@@ -345,11 +652,241 @@ class DbAccess {
      * @param id New track id
      */
     void setTrackId(int id) {
-        ContentValues values = new ContentValues();
-        values.put(DbContract.Track.COLUMN_ID, id);
-        db.update(DbContract.Track.TABLE_NAME,
-                values,
-                null, null);
+        writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Track.COLUMN_ID, id);
+            db.update(DbContract.Track.TABLE_NAME,
+                    values,
+                    null, null);
+        });
+    }
+
+    /**
+     * Update track simplification statistics.
+     *
+     * @param fixes Number of fixes offered to simplifier since last update
+     * @param maxDeviation Maximum deviation of dropped fixes (meters)
+     */
+    void updateTrackSimplification(long fixes, double maxDeviation) {
+        synchronized (simplificationTask) {
+            simplificationFixes = fixes;
+            simplificationMaxDeviation = maxDeviation;
+            writer.run(db, simplificationTask);
+        }
+    }
+
+    /**
+     * Add stored simplification arguments to track statistics, called on database writer
+     */
+    private void writeTrackSimplification() {
+        synchronized (sampleInserts) {
+            if (simplificationUpdate == null) {
+                simplificationUpdate = db.compileStatement("UPDATE " + DbContract.Track.TABLE_NAME + " SET " +
+                        DbContract.Track.COLUMN_FIXES + "=" + DbContract.Track.COLUMN_FIXES + "+?," +
+                        DbContract.Track.COLUMN_MAX_DEVIATION + "=MAX(" + DbContract.Track.COLUMN_MAX_DEVIATION + ",?)");
+            }
+            simplificationUpdate.bindLong(1, simplificationFixes);
+            simplificationUpdate.bindDouble(2, simplificationMaxDeviation);
+            simplificationUpdate.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Update track sensor samples compression statistics.
+     *
+     * @param samples Number of samples offered to compressor since last update
+     * @param storedSamples Number of samples stored since last update
+     */
+    @Override
+    public void updateTrackCompression(long samples, long storedSamples) {
+        synchronized (compressionTask) {
+            compressionSamples = samples;
+            compressionStoredSamples = storedSamples;
+            writer.run(db, compressionTask);
+        }
+    }
+
+    /**
+     * Add stored compression arguments to track statistics, called on database writer
+     */
+    private void writeTrackCompression() {
+        synchronized (sampleInserts) {
+            if (compressionUpdate == null) {
+                compressionUpdate = db.compileStatement("UPDATE " + DbContract.Track.TABLE_NAME + " SET " +
+                        DbContract.Track.COLUMN_SAMPLES + "=" + DbContract.Track.COLUMN_SAMPLES + "+?," +
+                        DbContract.Track.COLUMN_STORED_SAMPLES + "=" + DbContract.Track.COLUMN_STORED_SAMPLES + "+?");
+            }
+            compressionUpdate.bindLong(1, compressionSamples);
+            compressionUpdate.bindLong(2, compressionStoredSamples);
+            compressionUpdate.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Write stay record, collapse its positions.
+     * Stays are kept only locally, so positions not synchronized yet are kept
+     * until they are uploaded (see {@link #collapseStays()}).
+     *
+     * @param lat Centroid latitude
+     * @param lon Centroid longitude
+     * @param arrival Arrival time (seconds)
+     * @param departure Departure time (seconds)
+     * @param count Number of positions in stay
+     */
+    void writeStay(double lat, double lon, long arrival, long departure, int count) {
+        if (Logger.DEBUG) { Log.d(TAG, "[writeStay: " + count + "]"); }
+        writer.run(db, () -> {
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Stays.COLUMN_LATITUDE, lat);
+            values.put(DbContract.Stays.COLUMN_LONGITUDE, lon);
+            values.put(DbContract.Stays.COLUMN_ARRIVAL, arrival);
+            values.put(DbContract.Stays.COLUMN_DEPARTURE, departure);
+            values.put(DbContract.Stays.COLUMN_COUNT, count);
+            db.insert(DbContract.Stays.TABLE_NAME, null, values);
+            deleteStayPositions();
+        });
+    }
+
+    /**
+     * Delete synchronized positions covered by stays,
+     * eg. after positions were uploaded.
+     */
+    void collapseStays() {
+        writer.run(db, this::deleteStayPositions);
+    }
+
+    /**
+     * Delete synchronized positions covered by stays, update statistics of affected segments.
+     * Must be called inside transaction.
+     */
+    private void deleteStayPositions() {
+        final String inStay = DbContract.Positions.COLUMN_SYNCED + "=1 AND EXISTS (SELECT 1 FROM " +
+                DbContract.Stays.TABLE_NAME + " WHERE " +
+                DbContract.Positions.TABLE_NAME + "." + DbContract.Positions.COLUMN_TIME + " BETWEEN " +
+                DbContract.Stays.COLUMN_ARRIVAL + " AND " + DbContract.Stays.COLUMN_DEPARTURE + ")";
+        final List<Integer> segments = new ArrayList<>();
+        try (Cursor cursor = db.query(true, DbContract.Positions.TABLE_NAME,
+                new String[] { DbContract.Positions.COLUMN_SEGMENT },
+                inStay, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                segments.add(cursor.getInt(0));
+            }
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        final int deleted = db.delete(DbContract.Positions.TABLE_NAME, inStay, null);
+        if (Logger.DEBUG) { Log.d(TAG, "[stay positions deleted: " + deleted + "]"); }
+        for (int segment : segments) {
+            recomputeSegment(segment);
+        }
+    }
+
+    /**
+     * Recompute segment statistics from its stored positions, delete segment if empty.
+     * Must be called inside transaction.
+     *
+     * @param segment Segment
+     */
+    private void recomputeSegment(int segment) {
+        final String[] args = new String[] { String.valueOf(segment) };
+        try (Cursor cursor = db.query(DbContract.Positions.TABLE_NAME,
+                new String[] {
+                        DbContract.Positions.COLUMN_TIME,
+                        DbContract.Positions.COLUMN_LATITUDE,
+                        DbContract.Positions.COLUMN_LONGITUDE,
+                        DbContract.Positions.COLUMN_FILTERED_LATITUDE,
+                        DbContract.Positions.COLUMN_FILTERED_LONGITUDE
+                },
+                DbContract.Positions.COLUMN_SEGMENT + "=?", args,
+                null, null,
+                DbContract.Positions._ID)) {
+            if (!cursor.moveToFirst()) {
+                db.delete(DbContract.Segments.TABLE_NAME, DbContract.Segments._ID + "=?", args);
+                return;
+            }
+            // same distances as computed by segmenter at write time
+            final float[] results = new float[1];
+            final long start = cursor.getLong(0);
+            double lastLat = getSummaryLatitude(cursor);
+            double lastLon = getSummaryLongitude(cursor);
+            double distance = 0;
+            while (cursor.moveToNext()) {
+                final double lat = getSummaryLatitude(cursor);
+                final double lon = getSummaryLongitude(cursor);
+                Location.distanceBetween(lastLat, lastLon, lat, lon, results);
+                distance += results[0];
+                lastLat = lat;
+                lastLon = lon;
+            }
+            cursor.moveToLast();
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Segments.COLUMN_START, start);
+            values.put(DbContract.Segments.COLUMN_END, cursor.getLong(0));
+            values.put(DbContract.Segments.COLUMN_COUNT, cursor.getCount());
+            values.put(DbContract.Segments.COLUMN_DISTANCE, distance);
+            db.update(DbContract.Segments.TABLE_NAME, values, DbContract.Segments._ID + "=?", args);
+        }
+    }
+
+    /**
+     * Get result set containing all stays.
+     *
+     * @return Result set
+     */
+    Cursor getStays() {
+        return db.query(DbContract.Stays.TABLE_NAME,
+                new String[] {"*"},
+                null, null, null, null,
+                DbContract.Stays.COLUMN_ARRIVAL);
+    }
+
+    /**
+     * Get all geofenced zones.
+     * Invalid rows are skipped.
+     *
+     * @return Zones list
+     */
+    List<Zone> getZones() {
+        final List<Zone> zones = new ArrayList<>();
+        Cursor cursor = db.query(DbContract.Zones.TABLE_NAME,
+                new String[] {
+                        DbContract.Zones.COLUMN_NAME,
+                        DbContract.Zones.COLUMN_MODE,
+                        DbContract.Zones.COLUMN_VERTICES,
+                        DbContract.Zones.COLUMN_RADIUS
+                },
+                null, null, null, null,
+                DbContract.Zones._ID);
+        while (cursor.moveToNext()) {
+            try {
+                zones.add(Zone.fromColumns(cursor.getString(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getDouble(3)));
+            } catch (IllegalArgumentException e) {
+                if (Logger.DEBUG) { Log.d(TAG, "[invalid zone: " + e.getMessage() + "]"); }
+            }
+        }
+        cursor.close();
+        return zones;
+    }
+
+    /**
+     * Replace all geofenced zones.
+     *
+     * @param zones Zones list
+     */
+    void setZones(List<Zone> zones) {
+        writer.run(db, () -> {
+            db.delete(DbContract.Zones.TABLE_NAME, null, null);
+            ContentValues values = new ContentValues();
+            for (Zone zone : zones) {
+                values.put(DbContract.Zones.COLUMN_NAME, zone.getName());
+                values.put(DbContract.Zones.COLUMN_MODE, zone.getMode());
+                values.put(DbContract.Zones.COLUMN_VERTICES, zone.getVertices());
+                values.put(DbContract.Zones.COLUMN_RADIUS, zone.getRadius());
+                db.insert(DbContract.Zones.TABLE_NAME, null, values);
+            }
+        });
     }
 
     /**
@@ -359,50 +896,88 @@ class DbAccess {
      * @param name New track name
      */
     void newTrack(String name) {
-        truncateTrack();
-        truncatePositions();
-        ContentValues values = new ContentValues();
-        values.put(DbContract.Track.COLUMN_NAME, name);
-        db.insert(DbContract.Track.TABLE_NAME, null, values);
+        writer.run(db, () -> {
+            truncateTrack();
+            truncatePositions();
+            db.delete(DbContract.Segments.TABLE_NAME, null, null);
+            db.delete(DbContract.Stays.TABLE_NAME, null, null);
+            ContentValues values = new ContentValues();
+            values.put(DbContract.Track.COLUMN_NAME, name);
+            db.insert(DbContract.Track.TABLE_NAME, null, values);
+        });
     }
 
     /**
-     * Get track summary
+     * Get track summary.
+     * Computed from segment statistics updated at write time,
+     * which use filtered coordinates for distance when available.
      *
      * @return TrackSummary object, null if no positions
      */
     @Nullable
     TrackSummary getTrackSummary() {
-        Cursor positions = db.query(DbContract.Positions.TABLE_NAME,
-                new String[] {"*"},
-                null, null, null, null,
-                DbContract.Positions._ID);
+        Cursor segments = db.query(DbContract.Segments.TABLE_NAME,
+                new String[] {
+                        "SUM(" + DbContract.Segments.COLUMN_DISTANCE + ")",
+                        "SUM(" + DbContract.Segments.COLUMN_COUNT + ")",
+                        "MIN(" + DbContract.Segments.COLUMN_START + ")",
+                        "MAX(" + DbContract.Segments.COLUMN_END + ")"
+                },
+                null, null, null, null, null);
         TrackSummary summary = null;
-        if (positions.moveToFirst()) {
-            double distance = 0.0;
-            long count = 1;
-            double startLon = positions.getDouble(positions.getColumnIndex(DbContract.Positions.COLUMN_LONGITUDE));
-            double startLat = positions.getDouble(positions.getColumnIndex(DbContract.Positions.COLUMN_LATITUDE));
-            long startTime = positions.getLong(positions.getColumnIndex(DbContract.Positions.COLUMN_TIME));
-            long endTime = startTime;
-            while (positions.moveToNext()) {
-                count++;
-                double endLon = positions.getDouble(positions.getColumnIndex(DbContract.Positions.COLUMN_LONGITUDE));
-                double endLat = positions.getDouble(positions.getColumnIndex(DbContract.Positions.COLUMN_LATITUDE));
-                endTime = positions.getLong(positions.getColumnIndex(DbContract.Positions.COLUMN_TIME));
-                float[] results = new float[1];
-                Location.distanceBetween(startLat, startLon, endLat, endLon, results);
-                distance += results[0];
-                startLon = endLon;
-                startLat = endLat;
+        if (segments.moveToFirst() && segments.getLong(1) > 0) {
+            final double distance = segments.getDouble(0);
+            final long count = segments.getLong(1);
+            final long duration = segments.getLong(3) - segments.getLong(2);
+            long fixes = 0;
+            double maxDeviation = 0;
+            long samples = 0;
+            long storedSamples = 0;
+            Cursor track = db.query(DbContract.Track.TABLE_NAME,
+                    new String[] {DbContract.Track.COLUMN_FIXES, DbContract.Track.COLUMN_MAX_DEVIATION,
+                            DbContract.Track.COLUMN_SAMPLES, DbContract.Track.COLUMN_STORED_SAMPLES},
+                    null, null, null, null, null,
+                    "1");
+            if (track.moveToFirst()) {
+                fixes = track.getLong(0);
+                maxDeviation = track.getDouble(1);
+                samples = track.getLong(2);
+                storedSamples = track.getLong(3);
             }
-            long duration = endTime - startTime;
-            summary = new TrackSummary(Math.round(distance), duration, count);
+            track.close();
+            summary = new TrackSummary(Math.round(distance), duration, count, fixes, maxDeviation,
+                    samples, storedSamples);
         }
-        positions.close();
+        segments.close();
         return summary;
     }
 
+    /**
+     * Get latitude for summary, filtered if available
+     * @param cursor Positions cursor
+     * @return Latitude
+     */
+    static double getSummaryLatitude(Cursor cursor) {
+        int index = cursor.getColumnIndex(DbContract.Positions.COLUMN_FILTERED_LATITUDE);
+        if (cursor.isNull(index)) {
+            index = cursor.getColumnIndex(DbContract.Positions.COLUMN_LATITUDE);
+        }
+        return cursor.getDouble(index);
+    }
+
+    /**
+     * Get longitude for summary, filtered if available
+     * @param cursor Positions cursor
+     * @return Longitude
+     */
+    static double getSummaryLongitude(Cursor cursor) {
+        int index = cursor.getColumnIndex(DbContract.Positions.COLUMN_FILTERED_LONGITUDE);
+        if (cursor.isNull(index)) {
+            index = cursor.getColumnIndex(DbContract.Positions.COLUMN_LONGITUDE);
+        }
+        return cursor.getDouble(index);
+    }
+
     /**
      * Deletes all track metadata.
      */
@@ -418,21 +993,61 @@ class DbAccess {
     }
 
     /**
-     * Closes database
+     * Closes database.
+     * Idle connection stays open until released (see {@link #release}).
      */
     void close() {
         synchronized (DbAccess.class) {
-            if (--openCount == 0) {
-                if (Logger.DEBUG) { Log.d(TAG, "[close]"); }
+            if (openCount > 0) {
+                openCount--;
+            }
+            if (Logger.DEBUG) { Log.d(TAG, "[-openCount = " + openCount + "]"); }
+        }
+    }
 
-                if (db != null) {
-                    db.close();
+    /**
+     * Release idle connection, eg. on memory pressure.
+     * Connection in use is kept open, cached pages are released instead.
+     */
+    static void release() {
+        synchronized (DbAccess.class) {
+            if (db == null) {
+                return;
+            }
+            if (openCount > 0) {
+                if (Logger.DEBUG) { Log.d(TAG, "[release memory, openCount = " + openCount + "]"); }
+                SQLiteDatabase.releaseMemory();
+                return;
+            }
+            if (Logger.DEBUG) { Log.d(TAG, "[close]"); }
+            synchronized (sampleInserts) {
+                for (SQLiteStatement insert : sampleInserts.values()) {
+                    insert.close();
                 }
-                if (mDbHelper != null) {
-                    mDbHelper.close();
+                sampleInserts.clear();
+                if (compressionUpdate != null) {
+                    compressionUpdate.close();
+                    compressionUpdate = null;
+                }
+                if (simplificationUpdate != null) {
+                    simplificationUpdate.close();
+                    simplificationUpdate = null;
+                }
+                if (spectrumInsert != null) {
+                    spectrumInsert.close();
+                    spectrumInsert = null;
+                }
+                if (segmentUpdate != null) {
+                    segmentUpdate.close();
+                    segmentUpdate = null;
                 }
             }
-            if (Logger.DEBUG) { Log.d(TAG, "[-openCount = " + openCount + "]"); }
+            db.close();
+            db = null;
+            if (mDbHelper != null) {
+                mDbHelper.close();
+            }
+            metrics.onConnection(PipelineMetrics.Connection.CLOSED);
         }
     }
 
@@ -535,18 +1150,6 @@ class DbAccess {
         return cursor.getString(cursor.getColumnIndex(DbContract.Positions.COLUMN_LATITUDE));
     }
 
-    static String getX(Cursor cursor) {
-        return cursor.getString(cursor.getColumnIndex(DbContract.Accelerations.COLUMN_X));
-    }
-
-    static String getY(Cursor cursor) {
-        return cursor.getString(cursor.getColumnIndex(DbContract.Accelerations.COLUMN_Y));
-    }
-
-    static String getZ(Cursor cursor) {
-        return cursor.getString(cursor.getColumnIndex(DbContract.Accelerations.COLUMN_Z));
-    }
-
     /**
      * Get longitude from positions cursor
      * @param cursor Cursor
@@ -573,6 +1176,16 @@ class DbAccess {
         return cursor.getString(cursor.getColumnIndex(DbContract.Positions.COLUMN_TIME));
     }
 
+    /**
+     * Get time from samples or spectra cursor
+     * @param cursor Cursor
+     * @return String time in seconds with milliseconds fraction
+     */
+    static String getSampleTime(Cursor cursor) {
+        final long millis = cursor.getLong(cursor.getColumnIndex(DbContract.Samples.COLUMN_TIME));
+        return String.format(Locale.US, "%d.%03d", millis / 1000, millis % 1000);
+    }
+
     /**
      * Get ISO 8601 formatted time from positions cursor
      * @param cursor Cursor
@@ -583,6 +1196,25 @@ class DbAccess {
         return getTimeISO8601(timestamp);
     }
 
+    /**
+     * Get sample values from samples cursor
+     * @param cursor Cursor
+     * @param valuesCount Number of values in sample
+     * @return String values
+     */
+    static String[] getSampleValues(Cursor cursor, int valuesCount) {
+        final String[] columns = {
+                DbContract.Samples.COLUMN_X,
+                DbContract.Samples.COLUMN_Y,
+                DbContract.Samples.COLUMN_Z
+        };
+        String[] values = new String[valuesCount];
+        for (int i = 0; i < valuesCount; i++) {
+            values[i] = cursor.getString(cursor.getColumnIndex(columns[i]));
+        }
+        return values;
+    }
+
     /**
      * Get ID from positions cursor
      * @param cursor Cursor
@@ -35,22 +35,85 @@ final class DbContract {
         public static final String COLUMN_ERROR = "error";
         public static final String COLUMN_BATTERY_STATUS = "battery_status";
         public static final String COLUMN_BATTERY_LEVEL = "battery_level";
+        public static final String COLUMN_FILTERED_LATITUDE = "filtered_latitude";
+        public static final String COLUMN_FILTERED_LONGITUDE = "filtered_longitude";
+        public static final String COLUMN_SEGMENT = "segment";
+
+        /**
+         * Map position time to sensor samples time base.
+         * Position time is stored in seconds (text column of original schema),
+         * sample times in milliseconds, both taken from {@link SampleClock}.
+         * Position stands for its whole second, samples recorded during it
+         * are in range [toSampleTime(time), toSampleTime(time + 1)).
+         *
+         * @param time Position time (UTC seconds)
+         * @return Sample time (UTC milliseconds)
+         */
+        static long toSampleTime(long time) {
+            return time * 1000;
+        }
+    }
+
+    /** Track segments table, statistics updated incrementally */
+    public static class Segments implements BaseColumns {
+        public static final String TABLE_NAME = "segments";
+        public static final String COLUMN_START = "start";
+        public static final String COLUMN_END = "end";
+        public static final String COLUMN_COUNT = "count";
+        public static final String COLUMN_DISTANCE = "distance";
     }
 
-    /** Accelerations table **/
-    public static class Accelerations implements BaseColumns {
-        public static final String TABLE_NAME = "accelerations";
+    /** Sensor samples tables, one for each sensor channel */
+    public static class Samples implements BaseColumns {
+        public static final String TABLE_ACCELERATIONS = "accelerations";
+        public static final String TABLE_LINEAR_ACCELERATIONS = "linear_accelerations";
+        public static final String TABLE_ROTATIONS = "rotations";
+        public static final String TABLE_MAGNETIC_FIELDS = "magnetic_fields";
+        public static final String TABLE_PRESSURES = "pressures";
         public static final String COLUMN_TIME = "time";
         public static final String COLUMN_X = "x";
         public static final String COLUMN_Y = "y";
         public static final String COLUMN_Z = "z";
         public static final String COLUMN_SYNCED = "synced";
-    };
+    }
 
     /** Track table */
     public static class Track {
         public static final String TABLE_NAME = "track";
         public static final String COLUMN_ID = "id";
         public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_FIXES = "fixes";
+        public static final String COLUMN_MAX_DEVIATION = "max_deviation";
+        public static final String COLUMN_SAMPLES = "samples";
+        public static final String COLUMN_STORED_SAMPLES = "stored_samples";
+    }
+
+    /** Stay points table */
+    public static class Stays implements BaseColumns {
+        public static final String TABLE_NAME = "stays";
+        public static final String COLUMN_LATITUDE = "latitude";
+        public static final String COLUMN_LONGITUDE = "longitude";
+        public static final String COLUMN_ARRIVAL = "arrival";
+        public static final String COLUMN_DEPARTURE = "departure";
+        public static final String COLUMN_COUNT = "count";
+    }
+
+    /** Vibration spectra table */
+    public static class Spectra implements BaseColumns {
+        public static final String TABLE_NAME = "spectra";
+        public static final String COLUMN_TIME = "time";
+        public static final String COLUMN_RATE = "rate";
+        public static final String COLUMN_DOMINANT = "dominant";
+        public static final String COLUMN_ENERGIES = "energies";
+        public static final String COLUMN_SYNCED = "synced";
+    }
+
+    /** Geofenced zones table */
+    public static class Zones implements BaseColumns {
+        public static final String TABLE_NAME = "zones";
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_MODE = "mode";
+        public static final String COLUMN_VERTICES = "vertices";
+        public static final String COLUMN_RADIUS = "radius";
     }
 }
@@ -22,11 +22,11 @@ class DbHelper extends SQLiteOpenHelper {
 
     private static DbHelper sInstance;
 
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 10;
     private static final String DATABASE_NAME = "ulogger.db";
 
     private static final String SQL_CREATE_POSITIONS =
-            "CREATE TABLE " + DbContract.Positions.TABLE_NAME + " (" +
+            "CREATE TABLE IF NOT EXISTS " + DbContract.Positions.TABLE_NAME + " (" +
             DbContract.Positions._ID + " INTEGER PRIMARY KEY," +
             DbContract.Positions.COLUMN_TIME + " TEXT," +
             DbContract.Positions.COLUMN_LATITUDE + " TEXT," +
@@ -39,29 +39,103 @@ class DbHelper extends SQLiteOpenHelper {
             DbContract.Positions.COLUMN_SYNCED + " INTEGER DEFAULT 0," +
             DbContract.Positions.COLUMN_ERROR + " TEXT DEFAULT NULL," +
             DbContract.Positions.COLUMN_BATTERY_STATUS + " TEXT DEFAULT NULL," +
-            DbContract.Positions.COLUMN_BATTERY_LEVEL + " TEXT DEFAULT NULL)";
-
-    private static final String SQL_CREATE_ACCELERATIONS =
-            "CREATE TABLE " + DbContract.Accelerations.TABLE_NAME + " (" +
-                    DbContract.Accelerations._ID + " INTEGER PRIMARY KEY," +
-                    DbContract.Accelerations.COLUMN_TIME + " TEXT," +
-                    DbContract.Accelerations.COLUMN_X + " TEXT," +
-                    DbContract.Accelerations.COLUMN_Y + " TEXT," +
-                    DbContract.Accelerations.COLUMN_Z + " TEXT," +
-                    DbContract.Positions.COLUMN_SYNCED + " INTEGER DEFAULT 0)";
+            DbContract.Positions.COLUMN_BATTERY_LEVEL + " TEXT DEFAULT NULL," +
+            DbContract.Positions.COLUMN_FILTERED_LATITUDE + " TEXT DEFAULT NULL," +
+            DbContract.Positions.COLUMN_FILTERED_LONGITUDE + " TEXT DEFAULT NULL," +
+            DbContract.Positions.COLUMN_SEGMENT + " INTEGER DEFAULT 0)";
 
+    private static final String SQL_CREATE_SEGMENTS =
+            "CREATE TABLE IF NOT EXISTS " + DbContract.Segments.TABLE_NAME + " (" +
+                    DbContract.Segments._ID + " INTEGER PRIMARY KEY," +
+                    DbContract.Segments.COLUMN_START + " INTEGER," +
+                    DbContract.Segments.COLUMN_END + " INTEGER," +
+                    DbContract.Segments.COLUMN_COUNT + " INTEGER DEFAULT 0," +
+                    DbContract.Segments.COLUMN_DISTANCE + " REAL DEFAULT 0)";
 
     private static final String SQL_CREATE_TRACK =
-            "CREATE TABLE " + DbContract.Track.TABLE_NAME + " (" +
+            "CREATE TABLE IF NOT EXISTS " + DbContract.Track.TABLE_NAME + " (" +
                     DbContract.Track.COLUMN_ID + " INTEGER DEFAULT NULL," +
-                    DbContract.Track.COLUMN_NAME + " TEXT)";
+                    DbContract.Track.COLUMN_NAME + " TEXT," +
+                    DbContract.Track.COLUMN_FIXES + " INTEGER DEFAULT 0," +
+                    DbContract.Track.COLUMN_MAX_DEVIATION + " REAL DEFAULT 0," +
+                    DbContract.Track.COLUMN_SAMPLES + " INTEGER DEFAULT 0," +
+                    DbContract.Track.COLUMN_STORED_SAMPLES + " INTEGER DEFAULT 0)";
+
+    private static final String SQL_CREATE_STAYS =
+            "CREATE TABLE IF NOT EXISTS " + DbContract.Stays.TABLE_NAME + " (" +
+                    DbContract.Stays._ID + " INTEGER PRIMARY KEY," +
+                    DbContract.Stays.COLUMN_LATITUDE + " REAL," +
+                    DbContract.Stays.COLUMN_LONGITUDE + " REAL," +
+                    DbContract.Stays.COLUMN_ARRIVAL + " INTEGER," +
+                    DbContract.Stays.COLUMN_DEPARTURE + " INTEGER," +
+                    DbContract.Stays.COLUMN_COUNT + " INTEGER)";
+
+    private static final String SQL_CREATE_ZONES =
+            "CREATE TABLE IF NOT EXISTS " + DbContract.Zones.TABLE_NAME + " (" +
+                    DbContract.Zones._ID + " INTEGER PRIMARY KEY," +
+                    DbContract.Zones.COLUMN_NAME + " TEXT," +
+                    DbContract.Zones.COLUMN_MODE + " TEXT," +
+                    DbContract.Zones.COLUMN_VERTICES + " TEXT," +
+                    DbContract.Zones.COLUMN_RADIUS + " REAL DEFAULT 0)";
+
+    private static final String SQL_CREATE_SPECTRA =
+            "CREATE TABLE IF NOT EXISTS " + DbContract.Spectra.TABLE_NAME + " (" +
+                    DbContract.Spectra._ID + " INTEGER PRIMARY KEY," +
+                    DbContract.Spectra.COLUMN_TIME + " INTEGER," +
+                    DbContract.Spectra.COLUMN_RATE + " REAL," +
+                    DbContract.Spectra.COLUMN_DOMINANT + " REAL," +
+                    DbContract.Spectra.COLUMN_ENERGIES + " TEXT," +
+                    DbContract.Spectra.COLUMN_SYNCED + " INTEGER DEFAULT 0)";
+    private static final String SQL_INDEX_SPECTRA =
+            "CREATE INDEX IF NOT EXISTS " + DbContract.Spectra.TABLE_NAME + "_" + DbContract.Spectra.COLUMN_TIME + "_idx ON " +
+                    DbContract.Spectra.TABLE_NAME + " (" + DbContract.Spectra.COLUMN_TIME + ")";
 
     private static final String SQL_DELETE_POSITIONS =
             "DROP TABLE IF EXISTS " + DbContract.Positions.TABLE_NAME;
-    private static final String SQL_DELETE_ACCELERATIONS =
-            "DROP TABLE IF EXISTS " + DbContract.Accelerations.TABLE_NAME;
     private static final String SQL_DELETE_TRACK =
             "DROP TABLE IF EXISTS " + DbContract.Track.TABLE_NAME;
+    private static final String SQL_DELETE_SEGMENTS =
+            "DROP TABLE IF EXISTS " + DbContract.Segments.TABLE_NAME;
+    private static final String SQL_DELETE_STAYS =
+            "DROP TABLE IF EXISTS " + DbContract.Stays.TABLE_NAME;
+    private static final String SQL_DELETE_ZONES =
+            "DROP TABLE IF EXISTS " + DbContract.Zones.TABLE_NAME;
+    private static final String SQL_DELETE_SPECTRA =
+            "DROP TABLE IF EXISTS " + DbContract.Spectra.TABLE_NAME;
+
+    /**
+     * Get SQL creating samples table for given sensor channel
+     * @param channel Sensor channel
+     * @return SQL statement
+     */
+    private static String sqlCreateSamples(SensorChannel channel) {
+        return "CREATE TABLE IF NOT EXISTS " + channel.getTableName() + " (" +
+                DbContract.Samples._ID + " INTEGER PRIMARY KEY," +
+                DbContract.Samples.COLUMN_TIME + " INTEGER," +
+                DbContract.Samples.COLUMN_X + " TEXT," +
+                DbContract.Samples.COLUMN_Y + " TEXT DEFAULT NULL," +
+                DbContract.Samples.COLUMN_Z + " TEXT DEFAULT NULL," +
+                DbContract.Samples.COLUMN_SYNCED + " INTEGER DEFAULT 0)";
+    }
+
+    /**
+     * Get SQL creating time index of samples table for given sensor channel
+     * @param channel Sensor channel
+     * @return SQL statement
+     */
+    private static String sqlIndexSamples(SensorChannel channel) {
+        return "CREATE INDEX IF NOT EXISTS " + channel.getTableName() + "_" + DbContract.Samples.COLUMN_TIME + "_idx ON " +
+                channel.getTableName() + " (" + DbContract.Samples.COLUMN_TIME + ")";
+    }
+
+    /**
+     * Get SQL dropping samples table for given sensor channel
+     * @param channel Sensor channel
+     * @return SQL statement
+     */
+    private static String sqlDeleteSamples(SensorChannel channel) {
+        return "DROP TABLE IF EXISTS " + channel.getTableName();
+    }
 
     /**
      * Private constructor
@@ -70,6 +144,8 @@ class DbHelper extends SQLiteOpenHelper {
      */
     private DbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // readers run in parallel with single writer
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
@@ -78,7 +154,7 @@ class DbHelper extends SQLiteOpenHelper {
      * @param context Context
      * @return DbHelper instance
      */
-    static DbHelper getInstance(Context context) {
+    static synchronized DbHelper getInstance(Context context) {
 
         if (sInstance == null) {
             sInstance = new DbHelper(context.getApplicationContext());
@@ -87,35 +163,106 @@ class DbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Create track and positions tables
+     * Create track, positions, segments, sensor samples, spectra, stays and zones tables
      * @param db Database handle
      */
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_POSITIONS);
-        db.execSQL(SQL_CREATE_ACCELERATIONS);
+        for (SensorChannel channel : SensorChannel.values()) {
+            db.execSQL(sqlCreateSamples(channel));
+            db.execSQL(sqlIndexSamples(channel));
+        }
         db.execSQL(SQL_CREATE_TRACK);
+        db.execSQL(SQL_CREATE_SEGMENTS);
+        db.execSQL(SQL_CREATE_STAYS);
+        db.execSQL(SQL_CREATE_ZONES);
+        db.execSQL(SQL_CREATE_SPECTRA);
+        db.execSQL(SQL_INDEX_SPECTRA);
     }
 
     /**
-     * On upgrade delete all tables, call create
+     * Upgrade database step by step from old version, keeping stored data
      * @param db Database handle
      * @param oldVersion Old version number
      * @param newVersion New version number
      */
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(SQL_DELETE_POSITIONS);
-        db.execSQL(SQL_DELETE_ACCELERATIONS);
-        db.execSQL(SQL_DELETE_TRACK);
-        onCreate(db);
+        if (oldVersion < 2) {
+            // accelerations table is kept as accelerometer channel table
+            for (SensorChannel channel : SensorChannel.values()) {
+                db.execSQL(sqlCreateSamples(channel));
+            }
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + DbContract.Positions.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Positions.COLUMN_FILTERED_LATITUDE + " TEXT DEFAULT NULL");
+            db.execSQL("ALTER TABLE " + DbContract.Positions.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Positions.COLUMN_FILTERED_LONGITUDE + " TEXT DEFAULT NULL");
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + DbContract.Track.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Track.COLUMN_FIXES + " INTEGER DEFAULT 0");
+            db.execSQL("ALTER TABLE " + DbContract.Track.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Track.COLUMN_MAX_DEVIATION + " REAL DEFAULT 0");
+        }
+        if (oldVersion < 5) {
+            db.execSQL(SQL_CREATE_ZONES);
+        }
+        if (oldVersion < 6) {
+            db.execSQL(SQL_CREATE_STAYS);
+        }
+        if (oldVersion < 7) {
+            // positions stored before segmentation stay in segment 0, outside segments table
+            db.execSQL("ALTER TABLE " + DbContract.Positions.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Positions.COLUMN_SEGMENT + " INTEGER DEFAULT 0");
+            db.execSQL(SQL_CREATE_SEGMENTS);
+        }
+        if (oldVersion < 8) {
+            db.execSQL(SQL_CREATE_SPECTRA);
+        }
+        if (oldVersion < 9) {
+            db.execSQL("ALTER TABLE " + DbContract.Track.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Track.COLUMN_SAMPLES + " INTEGER DEFAULT 0");
+            db.execSQL("ALTER TABLE " + DbContract.Track.TABLE_NAME + " ADD COLUMN " +
+                    DbContract.Track.COLUMN_STORED_SAMPLES + " INTEGER DEFAULT 0");
+        }
+        if (oldVersion < 10) {
+            // sample times change from text seconds to indexed integer milliseconds
+            final String columns = DbContract.Samples._ID + "," + DbContract.Samples.COLUMN_X + "," +
+                    DbContract.Samples.COLUMN_Y + "," + DbContract.Samples.COLUMN_Z + "," +
+                    DbContract.Samples.COLUMN_SYNCED;
+            for (SensorChannel channel : SensorChannel.values()) {
+                final String table = channel.getTableName();
+                db.execSQL("ALTER TABLE " + table + " RENAME TO " + table + "_old");
+                db.execSQL(sqlCreateSamples(channel));
+                db.execSQL("INSERT INTO " + table + " (" + columns + "," + DbContract.Samples.COLUMN_TIME + ") " +
+                        "SELECT " + columns + ",CAST(" + DbContract.Samples.COLUMN_TIME + " AS INTEGER)*1000 " +
+                        "FROM " + table + "_old");
+                db.execSQL("DROP TABLE " + table + "_old");
+                db.execSQL(sqlIndexSamples(channel));
+            }
+            db.execSQL("UPDATE " + DbContract.Spectra.TABLE_NAME + " SET " +
+                    DbContract.Spectra.COLUMN_TIME + "=" + DbContract.Spectra.COLUMN_TIME + "*1000");
+            db.execSQL(SQL_INDEX_SPECTRA);
+        }
     }
 
     /**
-     * On downgrade behave as on upgrade
+     * On downgrade delete all tables, call create
      * @param db Database handle
      * @param oldVersion Old version number
      * @param newVersion New version number
      */
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        db.execSQL(SQL_DELETE_POSITIONS);
+        for (SensorChannel channel : SensorChannel.values()) {
+            db.execSQL(sqlDeleteSamples(channel));
+        }
+        db.execSQL(SQL_DELETE_TRACK);
+        db.execSQL(SQL_DELETE_SEGMENTS);
+        db.execSQL(SQL_DELETE_STAYS);
+        db.execSQL(SQL_DELETE_ZONES);
+        db.execSQL(SQL_DELETE_SPECTRA);
+        onCreate(db);
     }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Process-wide single database writer.
+ * All write tasks are executed on one thread, tasks queued by concurrent
+ * producers are grouped in one transaction. Caller waits until its task
+ * is committed, so written data is visible to its following reads.
+ * When grouped transaction fails, its tasks are run again one per transaction,
+ * so that only failing task is reported to its caller.
+ * Readers do not go through writer and run in parallel (write-ahead logging).
+ * Queueing a task does not allocate once queue capacity has grown.
+ */
+
+class DbWriter {
+
+    private static final String TAG = DbWriter.class.getSimpleName();
+
+    // maximum tasks in one transaction, bounds latency of waiting callers
+    private static final int MAX_GROUP = 64;
+
+    private static DbWriter sInstance;
+
+    /**
+     * Queued task with its result, reused by calling thread
+     */
+    private static class Entry {
+        private Runnable task;
+        private boolean isDone;
+        private boolean isFailed;
+    }
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final Entry[] group = new Entry[MAX_GROUP];
+    // caller waits for its task, so one entry per thread is enough
+    private final ThreadLocal<Entry> entries = new ThreadLocal<Entry>() {
+        @Override
+        protected Entry initialValue() {
+            return new Entry();
+        }
+    };
+    private Thread thread = null;
+    private SQLiteDatabase db = null;
+    private long transactionsCount = 0;
+    private long failuresCount = 0;
+
+    /**
+     * Constructor, use {@link #getInstance()} outside tests
+     */
+    DbWriter() {
+    }
+
+    /**
+     * Get singleton instance
+     * @return DbWriter singleton
+     */
+    static synchronized DbWriter getInstance() {
+        if (sInstance == null) {
+            sInstance = new DbWriter();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Execute write task in transaction on writer thread and wait until it is committed.
+     * Task started from another task runs immediately inside current transaction.
+     *
+     * @param database Database handle, must stay open until method returns
+     * @param task Task
+     * @return True if committed, false if task failed and its changes were rolled back
+     */
+    boolean run(SQLiteDatabase database, Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return true;
+        }
+        final Entry entry = entries.get();
+        boolean isInterrupted = false;
+        synchronized (lock) {
+            if (thread == null) {
+                thread = new Thread(this::loop, TAG);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            db = database;
+            entry.task = task;
+            entry.isDone = false;
+            entry.isFailed = false;
+            queue.add(entry);
+            lock.notifyAll();
+            while (!entry.isDone) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            entry.task = null;
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return !entry.isFailed;
+    }
+
+    /**
+     * Get number of committed transactions
+     * @return Count
+     */
+    long getTransactionsCount() {
+        synchronized (lock) {
+            return transactionsCount;
+        }
+    }
+
+    /**
+     * Get number of failed tasks
+     * @return Count
+     */
+    long getFailuresCount() {
+        synchronized (lock) {
+            return failuresCount;
+        }
+    }
+
+    /**
+     * Begin transaction
+     * @param database Database
+     */
+    void beginTransaction(SQLiteDatabase database) {
+        database.beginTransactionNonExclusive();
+    }
+
+    /**
+     * Mark current transaction as successful
+     * @param database Database
+     */
+    void setTransactionSuccessful(SQLiteDatabase database) {
+        database.setTransactionSuccessful();
+    }
+
+    /**
+     * End transaction, commit if marked as successful, roll back otherwise
+     * @param database Database
+     */
+    void endTransaction(SQLiteDatabase database) {
+        database.endTransaction();
+    }
+
+    /**
+     * Writer thread loop, executes queued tasks in groups
+     */
+    private void loop() {
+        while (true) {
+            final SQLiteDatabase database;
+            int count = 0;
+            synchronized (lock) {
+                while (queue.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        if (Logger.DEBUG) { Log.d(TAG, "[writer interrupted]"); }
+                    }
+                }
+                while (count < MAX_GROUP && !queue.isEmpty()) {
+                    group[count++] = queue.poll();
+                }
+                database = db;
+            }
+            if (!execute(database, 0, count)) {
+                if (count == 1) {
+                    group[0].isFailed = true;
+                } else {
+                    // isolate failing tasks, others are committed again one by one
+                    for (int i = 0; i < count; i++) {
+                        group[i].isFailed = !execute(database, i, 1);
+                    }
+                }
+            }
+            synchronized (lock) {
+                for (int i = 0; i < count; i++) {
+                    if (group[i].isFailed) {
+                        failuresCount++;
+                    }
+                    group[i].isDone = true;
+                    group[i] = null;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Execute range of grouped tasks in one transaction
+     * @param database Database
+     * @param from First task index
+     * @param count Number of tasks
+     * @return True if committed
+     */
+    private boolean execute(SQLiteDatabase database, int from, int count) {
+        try {
+            beginTransaction(database);
+            try {
+                for (int i = from; i < from + count; i++) {
+                    group[i].task.run();
+                }
+                setTransactionSuccessful(database);
+            } finally {
+                endTransaction(database);
+            }
+        } catch (RuntimeException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[write failed: " + e + "]"); }
+            return false;
+        }
+        synchronized (lock) {
+            transactionsCount++;
+        }
+        return true;
+    }
+}
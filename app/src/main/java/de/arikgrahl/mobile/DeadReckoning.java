@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.location.Location;
+
+/**
+ * Dead reckoning estimator producing synthetic positions between real fixes.
+ * Speed and heading are taken from last real fix, accelerometer is used
+ * to detect whether device is still moving. Estimate is reset on every real fix,
+ * its accuracy grows with extrapolation time and estimation stops after horizon.
+ */
+
+class DeadReckoning implements SensorEventListener {
+
+    static final String PROVIDER = "dr";
+
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    // stop extrapolating after this time since real fix
+    private static final long MAX_HORIZON_MILLIS = 5 * 60 * 1000;
+    // accuracy growth as fraction of extrapolated distance
+    private static final float DRIFT_FACTOR = 0.2f;
+    // smoothing factor of acceleration magnitude variance
+    private static final float VARIANCE_ALPHA = 0.05f;
+    // variance of acceleration magnitude ((m/s^2)^2) separating motion from rest
+    private static final float MOTION_VARIANCE = 0.05f;
+
+    // anchor of estimate, taken from last real fix
+    private boolean hasAnchor = false;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private float anchorSpeed;
+    private float anchorBearing;
+    private float anchorAccuracy;
+    private double anchorAltitude = Double.NaN;
+    private long anchorTime;
+    private long anchorRealtime;
+
+    // last estimate
+    private double latitude;
+    private double longitude;
+    private float accuracy;
+    private float speed;
+
+    private float meanMagnitude = SensorManager.GRAVITY_EARTH;
+    private float variance = 0;
+    private long stillSince = -1;
+
+    /**
+     * Reset estimate to real fix, fix without speed and bearing stops estimation
+     * @param loc Location
+     */
+    void reset(Location loc) {
+        if (!loc.hasSpeed() || !loc.hasBearing()) {
+            hasAnchor = false;
+            return;
+        }
+        reset(loc.getLatitude(), loc.getLongitude(), loc.getSpeed(), loc.getBearing(),
+                loc.hasAccuracy() ? loc.getAccuracy() : 0,
+                loc.getTime(), loc.getElapsedRealtimeNanos() / 1000000);
+        if (loc.hasAltitude()) {
+            anchorAltitude = loc.getAltitude();
+        }
+    }
+
+    /**
+     * Reset estimate to real fix
+     * @param lat Latitude
+     * @param lon Longitude
+     * @param speed Speed (m/s)
+     * @param bearing Bearing (degrees)
+     * @param accuracy Accuracy radius (meters)
+     * @param time Fix time (UTC milliseconds)
+     * @param realtime Monotonic fix time (milliseconds)
+     */
+    void reset(double lat, double lon, float speed, float bearing, float accuracy, long time, long realtime) {
+        anchorLatitude = lat;
+        anchorLongitude = lon;
+        anchorSpeed = speed;
+        anchorBearing = bearing;
+        anchorAccuracy = accuracy;
+        anchorAltitude = Double.NaN;
+        anchorTime = time;
+        anchorRealtime = realtime;
+        hasAnchor = true;
+    }
+
+    /**
+     * Estimate position at given time, fill location with it
+     * @param realtime Monotonic time (milliseconds)
+     * @param out Location to fill with estimate
+     * @return True if estimate is available
+     */
+    boolean estimate(long realtime, Location out) {
+        if (!estimate(realtime)) {
+            return false;
+        }
+        out.reset();
+        out.setProvider(PROVIDER);
+        out.setLatitude(latitude);
+        out.setLongitude(longitude);
+        out.setTime(anchorTime + realtime - anchorRealtime);
+        out.setElapsedRealtimeNanos(realtime * 1000000);
+        out.setAccuracy(accuracy);
+        out.setBearing(anchorBearing);
+        out.setSpeed(speed);
+        if (!Double.isNaN(anchorAltitude)) {
+            out.setAltitude(anchorAltitude);
+        }
+        return true;
+    }
+
+    /**
+     * Estimate position at given time
+     * @param realtime Monotonic time (milliseconds)
+     * @return True if estimate is available
+     */
+    boolean estimate(long realtime) {
+        final long elapsed = realtime - anchorRealtime;
+        if (!hasAnchor || elapsed <= 0 || elapsed > MAX_HORIZON_MILLIS) {
+            return false;
+        }
+        // only advance while device is moving
+        final long movingUntil = (stillSince >= 0) ? Math.min(stillSince, realtime) : realtime;
+        final long movingMillis = Math.max(movingUntil - anchorRealtime, 0);
+        final float distance = anchorSpeed * movingMillis / 1000f;
+        final double bearing = Math.toRadians(anchorBearing);
+        final double dLat = distance * Math.cos(bearing) / METERS_PER_DEGREE;
+        final double dLon = distance * Math.sin(bearing) / Math.max(METERS_PER_DEGREE * Math.cos(Math.toRadians(anchorLatitude)), 1);
+        latitude = anchorLatitude + dLat;
+        longitude = anchorLongitude + dLon;
+        accuracy = anchorAccuracy + DRIFT_FACTOR * distance;
+        speed = movingMillis < elapsed ? 0 : anchorSpeed;
+        return true;
+    }
+
+    /**
+     * Get latitude of last estimate
+     * @return Latitude
+     */
+    double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Get longitude of last estimate
+     * @return Longitude
+     */
+    double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Get accuracy radius of last estimate
+     * @return Accuracy (meters)
+     */
+    float getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Get speed of last estimate
+     * @return Speed (m/s), zero if device stopped
+     */
+    float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Check whether device is moving according to accelerometer
+     * @return True if moving
+     */
+    boolean isMoving() {
+        return stillSince < 0;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        onAcceleration(event.values[0], event.values[1], event.values[2], event.timestamp);
+    }
+
+    /**
+     * Update motion detection with accelerometer sample
+     * @param x Acceleration along x axis (m/s^2)
+     * @param y Acceleration along y axis (m/s^2)
+     * @param z Acceleration along z axis (m/s^2)
+     * @param timestamp Sample time (nanoseconds, elapsed realtime)
+     */
+    void onAcceleration(float x, float y, float z, long timestamp) {
+        final float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        final float delta = magnitude - meanMagnitude;
+        meanMagnitude += VARIANCE_ALPHA * delta;
+        variance = (1 - VARIANCE_ALPHA) * (variance + VARIANCE_ALPHA * delta * delta);
+        final long now = timestamp / 1000000;
+        if (variance > MOTION_VARIANCE) {
+            stillSince = -1;
+        } else if (stillSince < 0) {
+            stillSince = now;
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+    }
+}
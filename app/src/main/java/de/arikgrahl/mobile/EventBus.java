@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process publish/subscribe bus for service events.
+ * Events are delivered to subscribers on main thread.
+ * Events published in separate logger process are bridged
+ * with broadcast restricted to application package and signature permission.
+ */
+
+class EventBus {
+
+    private static final String TAG = EventBus.class.getSimpleName();
+
+    private static final String ACTION_EVENT = BuildConfig.APPLICATION_ID + ".broadcast.event";
+    static final String PERMISSION_INTERNAL = BuildConfig.APPLICATION_ID + ".permission.INTERNAL";
+    private static final String EXTRA_TYPE = "type";
+    private static final String EXTRA_REALTIME = "realtime";
+    private static final String EXTRA_POSITIONS = "positions";
+    private static final String EXTRA_SAMPLES = "samples";
+    private static final String EXTRA_MESSAGE = "message";
+
+    /** Event types */
+    enum Type {
+        LOCATION_STARTED,
+        LOCATION_STOPPED,
+        LOCATION_UPDATED,
+        LOCATION_DISABLED,
+        LOCATION_PERMISSION_DENIED,
+        GPS_DISABLED,
+        GPS_ENABLED,
+        NETWORK_DISABLED,
+        NETWORK_ENABLED,
+        SYNC_DONE,
+        SYNC_FAILED,
+        EXPORT_DONE,
+        EXPORT_FAILED
+    }
+
+    /**
+     * Immutable event with optional payload
+     */
+    static final class Event {
+        // payload count not known to publisher
+        static final int UNKNOWN = -1;
+
+        private final Type type;
+        private final long realtime;
+        private final int positions;
+        private final int samples;
+        private final String message;
+        private final long postRealtimeNanos;
+
+        /**
+         * Constructor
+         * @param type Type
+         * @param realtime Elapsed realtime of last location update (milliseconds), zero if not set
+         * @param positions Count of not synchronized positions, UNKNOWN if not known
+         * @param samples Count of not synchronized sensor samples, UNKNOWN if not known
+         * @param message Optional message, eg. error
+         */
+        Event(Type type, long realtime, int positions, int samples, @Nullable String message) {
+            this.type = type;
+            this.realtime = realtime;
+            this.positions = positions;
+            this.samples = samples;
+            this.message = message;
+            postRealtimeNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        /**
+         * Constructor of event without payload
+         * @param type Type
+         */
+        Event(Type type) {
+            this(type, 0, UNKNOWN, UNKNOWN, null);
+        }
+
+        /**
+         * Constructor of event with message
+         * @param type Type
+         * @param message Message
+         */
+        Event(Type type, @Nullable String message) {
+            this(type, 0, UNKNOWN, UNKNOWN, message);
+        }
+
+        /**
+         * Get type
+         * @return Type
+         */
+        Type getType() {
+            return type;
+        }
+
+        /**
+         * Get elapsed realtime of last location update
+         * @return Time (milliseconds), zero if not set
+         */
+        long getRealtime() {
+            return realtime;
+        }
+
+        /**
+         * Get count of not synchronized positions
+         * @return Count or UNKNOWN
+         */
+        int getPositions() {
+            return positions;
+        }
+
+        /**
+         * Get count of not synchronized sensor samples
+         * @return Count or UNKNOWN
+         */
+        int getSamples() {
+            return samples;
+        }
+
+        /**
+         * Get message
+         * @return Message or null
+         */
+        @Nullable
+        String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return type + "[realtime=" + realtime + ", positions=" + positions +
+                    ", samples=" + samples + ", message=" + message + "]";
+        }
+    }
+
+    /**
+     * Event subscriber
+     */
+    interface Listener {
+        /**
+         * Called on main thread
+         * @param event Event
+         */
+        void onEvent(Event event);
+    }
+
+    private static EventBus sInstance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    private boolean isBridged = false;
+
+    /**
+     * Private constructor
+     */
+    private EventBus() {
+    }
+
+    /**
+     * Get singleton instance
+     * @return EventBus singleton
+     */
+    static synchronized EventBus getInstance() {
+        if (sInstance == null) {
+            sInstance = new EventBus();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Subscribe to events, including events bridged from logger process
+     * @param context Context
+     * @param listener Listener
+     */
+    synchronized void subscribe(Context context, Listener listener) {
+        listeners.addIfAbsent(listener);
+        if (!isBridged) {
+            IntentFilter filter = new IntentFilter(ACTION_EVENT);
+            context.getApplicationContext().registerReceiver(bridge, filter, PERMISSION_INTERNAL, mainHandler);
+            isBridged = true;
+        }
+    }
+
+    /**
+     * Unsubscribe, pending events are not delivered to listener
+     * @param context Context
+     * @param listener Listener
+     */
+    synchronized void unsubscribe(Context context, Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && isBridged) {
+            context.getApplicationContext().unregisterReceiver(bridge);
+            isBridged = false;
+        }
+    }
+
+    /**
+     * Publish event to subscribers in this process
+     * @param event Event
+     */
+    void post(Event event) {
+        // called for every location update, message is built only when enabled with
+        // adb shell setprop log.tag.EventBus DEBUG
+        if (Logger.DEBUG && Log.isLoggable(TAG, Log.DEBUG)) { Log.d(TAG, "[post " + event + "]"); }
+        if (listeners.isEmpty()) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            deliver(event);
+        } else {
+            mainHandler.post(() -> deliver(event));
+        }
+    }
+
+    /**
+     * Publish event to subscribers in other processes of application,
+     * used by logger running in separate process
+     * @param context Context
+     * @param event Event
+     */
+    void postRemote(Context context, Event event) {
+        Intent intent = new Intent(ACTION_EVENT);
+        intent.setPackage(context.getPackageName());
+        intent.putExtra(EXTRA_TYPE, event.type.ordinal());
+        intent.putExtra(EXTRA_REALTIME, event.realtime);
+        intent.putExtra(EXTRA_POSITIONS, event.positions);
+        intent.putExtra(EXTRA_SAMPLES, event.samples);
+        intent.putExtra(EXTRA_MESSAGE, event.message);
+        context.sendBroadcast(intent, PERMISSION_INTERNAL);
+    }
+
+    /**
+     * Deliver event to current subscribers, on main thread
+     * @param event Event
+     */
+    private void deliver(Event event) {
+        metrics.onEventDelivered(SystemClock.elapsedRealtimeNanos() - event.postRealtimeNanos);
+        for (Listener listener : listeners) {
+            listener.onEvent(event);
+        }
+    }
+
+    /**
+     * Receiver of events bridged from logger process
+     */
+    private final BroadcastReceiver bridge = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final int type = intent.getIntExtra(EXTRA_TYPE, -1);
+            if (type < 0 || type >= Type.values().length) {
+                return;
+            }
+            deliver(new Event(Type.values()[type],
+                    intent.getLongExtra(EXTRA_REALTIME, 0),
+                    intent.getIntExtra(EXTRA_POSITIONS, Event.UNKNOWN),
+                    intent.getIntExtra(EXTRA_SAMPLES, Event.UNKNOWN),
+                    intent.getStringExtra(EXTRA_MESSAGE)));
+        }
+    };
+}
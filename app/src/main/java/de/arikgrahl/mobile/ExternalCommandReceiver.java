@@ -23,6 +23,8 @@ public class ExternalCommandReceiver extends BroadcastReceiver {
     private static final String START_NEW_LOGGER = "start new logger";
     private static final String STOP_LOGGER = "stop logger";
     private static final String START_UPLOAD = "start upload";
+    private static final String TRIGGER_CAPTURE = "trigger capture";
+    private static final String WRITE_METRICS = "write metrics";
 
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -47,6 +49,12 @@ public class ExternalCommandReceiver extends BroadcastReceiver {
                     case START_UPLOAD:
                         uploadData(context);
                         break;
+                    case TRIGGER_CAPTURE:
+                        triggerCapture(context);
+                        break;
+                    case WRITE_METRICS:
+                        writeMetrics(context);
+                        break;
                 }
             }
         }
@@ -64,7 +72,7 @@ public class ExternalCommandReceiver extends BroadcastReceiver {
         db.newTrack(AutoNamePreference.getAutoTrackName(context));
 
         db.close();
-        Intent intent = new Intent(context, LoggerService.class);
+        Intent intent = LoggerStatus.getServiceIntent(context);
         ContextCompat.startForegroundService(context, intent);
     }
 
@@ -79,7 +87,7 @@ public class ExternalCommandReceiver extends BroadcastReceiver {
             db.newTrack(AutoNamePreference.getAutoTrackName(context));
         }
         db.close();
-        Intent intent = new Intent(context, LoggerService.class);
+        Intent intent = LoggerStatus.getServiceIntent(context);
         ContextCompat.startForegroundService(context, intent);
     }
 
@@ -88,10 +96,34 @@ public class ExternalCommandReceiver extends BroadcastReceiver {
      * @param context Context
      */
     private void stopLogger(Context context) {
-        Intent intent = new Intent(context, LoggerService.class);
+        Intent intent = LoggerStatus.getServiceIntent(context);
         context.stopService(intent);
     }
 
+    /**
+     * Trigger accelerometer capture in running logger service
+     * @param context Context
+     */
+    private void triggerCapture(Context context) {
+        if (LoggerStatus.isRunning(context)) {
+            Intent intent = LoggerStatus.getServiceIntent(context);
+            intent.putExtra(LoggerService.TRIGGER_CAPTURE, true);
+            context.startService(intent);
+        }
+    }
+
+    /**
+     * Write pipeline metrics snapshot in running logger service
+     * @param context Context
+     */
+    private void writeMetrics(Context context) {
+        if (LoggerStatus.isRunning(context)) {
+            Intent intent = LoggerStatus.getServiceIntent(context);
+            intent.putExtra(LoggerService.WRITE_METRICS, true);
+            context.startService(intent);
+        }
+    }
+
     /**
      * Start logger service
      * @param context Context
@@ -31,9 +31,6 @@ public class GpxExportService extends IntentService {
 
     private static final String TAG = GpxExportService.class.getSimpleName();
 
-    public static final String BROADCAST_EXPORT_FAILED = "de.arikgrahl.mobile.broadcast.write_failed";
-    public static final String BROADCAST_EXPORT_DONE = "de.arikgrahl.mobile.broadcast.write_ok";
-
     private static final String ns_gpx = "http://www.topografix.com/GPX/1/1";
     private static final String ns_ulogger = "https://github.com/bfabiszewski/ulogger-android/1";
     private static final String ns_xsi = "http://www.w3.org/2001/XMLSchema-instance";
@@ -80,9 +77,9 @@ public class GpxExportService extends IntentService {
         if (intent != null && intent.getData() != null) {
             try {
                 write(intent.getData());
-                sendBroadcast(BROADCAST_EXPORT_DONE, null);
+                EventBus.getInstance().post(new EventBus.Event(EventBus.Type.EXPORT_DONE));
             } catch (IOException e) {
-                sendBroadcast(BROADCAST_EXPORT_FAILED, e.getMessage());
+                EventBus.getInstance().post(new EventBus.Event(EventBus.Type.EXPORT_FAILED, e.getMessage()));
             }
         }
     }
@@ -139,6 +136,9 @@ public class GpxExportService extends IntentService {
         writeTag(serializer, "time", trackTime);
         serializer.endTag(null, "metadata");
 
+        // stays
+        writeStays(serializer);
+
         // track
         serializer.startTag(null, "trk");
         writeTag(serializer, "name", trackName);
@@ -151,7 +151,7 @@ public class GpxExportService extends IntentService {
     }
 
     /**
-     * Write <trkseg> tag
+     * Write <trkseg> tag for each track segment
      *
      * @param serializer XmlSerializer
      * @throws IOException IO exception
@@ -162,8 +162,18 @@ public class GpxExportService extends IntentService {
             throws IOException, IllegalArgumentException, IllegalStateException {
 
         try (Cursor cursor = db.getPositions()) {
-            serializer.startTag(null, "trkseg");
+            final int segmentIndex = cursor.getColumnIndex(DbContract.Positions.COLUMN_SEGMENT);
+            boolean isOpen = false;
+            int segment = 0;
             while (cursor.moveToNext()) {
+                if (!isOpen || cursor.getInt(segmentIndex) != segment) {
+                    if (isOpen) {
+                        serializer.endTag(null, "trkseg");
+                    }
+                    serializer.startTag(null, "trkseg");
+                    segment = cursor.getInt(segmentIndex);
+                    isOpen = true;
+                }
                 serializer.startTag(null, "trkpt");
                 serializer.attribute(null, "lat", DbAccess.getLatitude(cursor));
                 serializer.attribute(null, "lon", DbAccess.getLongitude(cursor));
@@ -191,7 +201,37 @@ public class GpxExportService extends IntentService {
 
                 serializer.endTag(null, "trkpt");
             }
-            serializer.endTag(null, "trkseg");
+            if (isOpen) {
+                serializer.endTag(null, "trkseg");
+            }
+        }
+    }
+
+    /**
+     * Write <wpt> tag for each stay
+     *
+     * @param serializer XmlSerializer
+     * @throws IOException IO exception
+     * @throws IllegalArgumentException Xml illegal argument
+     * @throws IllegalStateException Xml illegal state
+     */
+    private void writeStays(@NonNull XmlSerializer serializer)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+
+        try (Cursor cursor = db.getStays()) {
+            while (cursor.moveToNext()) {
+                final long arrival = cursor.getLong(cursor.getColumnIndex(DbContract.Stays.COLUMN_ARRIVAL));
+                final long departure = cursor.getLong(cursor.getColumnIndex(DbContract.Stays.COLUMN_DEPARTURE));
+                final int count = cursor.getInt(cursor.getColumnIndex(DbContract.Stays.COLUMN_COUNT));
+                serializer.startTag(null, "wpt");
+                serializer.attribute(null, "lat", cursor.getString(cursor.getColumnIndex(DbContract.Stays.COLUMN_LATITUDE)));
+                serializer.attribute(null, "lon", cursor.getString(cursor.getColumnIndex(DbContract.Stays.COLUMN_LONGITUDE)));
+                writeTag(serializer, "time", DbAccess.getTimeISO8601(arrival));
+                writeTag(serializer, "name", getString(R.string.gpx_stay_name));
+                writeTag(serializer, "desc", getResources().getQuantityString(R.plurals.gpx_stay_desc, count,
+                        DbAccess.getTimeISO8601(departure), count));
+                serializer.endTag(null, "wpt");
+            }
         }
     }
 
@@ -228,17 +268,4 @@ public class GpxExportService extends IntentService {
         serializer.endTag(ns, name);
     }
 
-    /**
-     * Send broadcast message
-     * @param broadcast Broadcast intent
-     * @param message Optional extra message
-     */
-    private void sendBroadcast(String broadcast, String message) {
-        Intent intent = new Intent(broadcast);
-        if (message != null) {
-            intent.putExtra("message", message);
-        }
-        sendBroadcast(intent);
-    }
-
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Logger service running in dedicated process (see manifest),
+ * so that sensor capture does not share heap and GC pauses with UI and synchronization.
+ */
+
+public class IsolatedLoggerService extends LoggerService {
+
+    @Override
+    boolean isIsolated() {
+        return true;
+    }
+}
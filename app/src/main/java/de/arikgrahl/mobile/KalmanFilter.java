@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Constant velocity Kalman filter smoothing positions.
+ * Reported accuracy is used as measurement noise.
+ * State is kept in local metric coordinates centered on last estimate,
+ * both axes share the same covariance, so update is O(1) without allocation.
+ */
+
+class KalmanFilter {
+
+    private static final double EARTH_RADIUS = 6371009;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    // white noise acceleration standard deviation (m/s^2)
+    private static final double ACCELERATION_NOISE = 2;
+    // initial velocity standard deviation (m/s)
+    private static final double VELOCITY_NOISE = 10;
+    // restart filter after longer gap between fixes
+    private static final long MAX_GAP_MILLIS = 10 * 60 * 1000;
+
+    private boolean isInitialized = false;
+    private long lastTimeMillis;
+    private double latitude;
+    private double longitude;
+    private double metersPerDegreeLon;
+    // velocity (m/s), east and north
+    private double velocityX;
+    private double velocityY;
+    // covariance of position and velocity (shared by both axes)
+    private double p00;
+    private double p01;
+    private double p11;
+
+    /**
+     * Reset filter state, next fix will initialize it
+     */
+    void reset() {
+        isInitialized = false;
+    }
+
+    /**
+     * Update filter with new fix
+     * @param lat Measured latitude
+     * @param lon Measured longitude
+     * @param accuracy Measurement accuracy (meters)
+     * @param timeMillis Monotonic fix time (milliseconds)
+     */
+    void update(double lat, double lon, double accuracy, long timeMillis) {
+        final double variance = accuracy * accuracy;
+        final long dtMillis = timeMillis - lastTimeMillis;
+        if (!isInitialized || dtMillis < 0 || dtMillis > MAX_GAP_MILLIS) {
+            init(lat, lon, variance, timeMillis);
+            return;
+        }
+        lastTimeMillis = timeMillis;
+
+        // predict
+        final double dt = dtMillis / 1000d;
+        final double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        final double dt2 = dt * dt;
+        double x = velocityX * dt;
+        double y = velocityY * dt;
+        final double pp00 = p00 + 2 * dt * p01 + dt2 * p11 + q * dt2 * dt2 / 4;
+        final double pp01 = p01 + dt * p11 + q * dt2 * dt / 2;
+        final double pp11 = p11 + q * dt2;
+
+        // update
+        final double s = pp00 + variance;
+        final double k0 = pp00 / s;
+        final double k1 = pp01 / s;
+        final double innovationX = (lon - longitude) * metersPerDegreeLon - x;
+        final double innovationY = (lat - latitude) * METERS_PER_DEGREE - y;
+        x += k0 * innovationX;
+        y += k0 * innovationY;
+        velocityX += k1 * innovationX;
+        velocityY += k1 * innovationY;
+        p00 = (1 - k0) * pp00;
+        p01 = (1 - k0) * pp01;
+        p11 = pp11 - k1 * pp01;
+
+        // move origin to new estimate
+        latitude += y / METERS_PER_DEGREE;
+        longitude += x / metersPerDegreeLon;
+        metersPerDegreeLon = getMetersPerDegreeLon(latitude);
+    }
+
+    /**
+     * Initialize filter with first fix
+     * @param lat Latitude
+     * @param lon Longitude
+     * @param variance Measurement variance
+     * @param timeMillis Fix time
+     */
+    private void init(double lat, double lon, double variance, long timeMillis) {
+        latitude = lat;
+        longitude = lon;
+        metersPerDegreeLon = getMetersPerDegreeLon(lat);
+        velocityX = 0;
+        velocityY = 0;
+        p00 = variance;
+        p01 = 0;
+        p11 = VELOCITY_NOISE * VELOCITY_NOISE;
+        lastTimeMillis = timeMillis;
+        isInitialized = true;
+    }
+
+    /**
+     * Get length of one degree of longitude at given latitude
+     * @param lat Latitude
+     * @return Meters
+     */
+    private static double getMetersPerDegreeLon(double lat) {
+        return Math.max(METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)), 1);
+    }
+
+    /**
+     * Get filtered latitude
+     * @return Latitude
+     */
+    double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Get filtered longitude
+     * @return Longitude
+     */
+    double getLongitude() {
+        return longitude;
+    }
+}
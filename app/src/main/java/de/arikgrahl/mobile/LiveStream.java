@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.location.Location;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Live stream of locations and sensor aggregates to bound clients.
+ * Lives in logger process. Logger thread only enqueues messages,
+ * they are sent to clients on separate dispatcher thread.
+ * Each client has its own rate limit, send budget and bounded queue,
+ * oldest messages are dropped when client does not keep up (see {@link StreamQueue}).
+ *
+ * Protocol (see {@link StreamService}):
+ * client sends MSG_REGISTER with replyTo set to its messenger and arg1 minimum interval
+ * between messages of same kind in milliseconds, MSG_UNREGISTER to stop.
+ * Client receives MSG_LOCATION and MSG_SENSOR with payload in data bundle.
+ * Client may send MSG_ACK with arg1 number of processed messages, otherwise
+ * it receives at most SEND_WINDOW messages per second.
+ */
+
+class LiveStream {
+
+    private static final String TAG = LiveStream.class.getSimpleName();
+
+    static final int MSG_REGISTER = 1;
+    static final int MSG_UNREGISTER = 2;
+    static final int MSG_LOCATION = 3;
+    static final int MSG_SENSOR = 4;
+    static final int MSG_ACK = 5;
+
+    static final String KEY_TIME = "time";
+    static final String KEY_LATITUDE = "latitude";
+    static final String KEY_LONGITUDE = "longitude";
+    static final String KEY_ALTITUDE = "altitude";
+    static final String KEY_ACCURACY = "accuracy";
+    static final String KEY_SPEED = "speed";
+    static final String KEY_BEARING = "bearing";
+    static final String KEY_PROVIDER = "provider";
+    static final String KEY_CHANNEL = "channel";
+    static final String KEY_COUNT = "count";
+    static final String KEY_MEAN = "mean";
+    static final String KEY_MIN = "min";
+    static final String KEY_MAX = "max";
+
+    // messages held for slow client
+    private static final int QUEUE_CAPACITY = 32;
+    // messages sent to client and not acknowledged
+    private static final int SEND_WINDOW = 16;
+    private static final long CREDIT_PERIOD_NANOS = 1000000000L;
+    // sensor aggregates period
+    private static final long AGGREGATE_PERIOD_MILLIS = 1000;
+    private static final int CHANNELS_COUNT = SensorChannel.values().length;
+    private static final int MAX_VALUES_COUNT = 4;
+
+    private static LiveStream sInstance;
+
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private volatile boolean isActive = false;
+    private Handler handler;
+    private Messenger messenger;
+    private final Runnable dispatchTask = this::dispatch;
+    private final Runnable aggregateTask = this::publishAggregates;
+
+    // sensor aggregates since last period, guarded by itself
+    private final int[] counts = new int[CHANNELS_COUNT];
+    private final double[] sums = new double[CHANNELS_COUNT * MAX_VALUES_COUNT];
+    private final float[] mins = new float[CHANNELS_COUNT * MAX_VALUES_COUNT];
+    private final float[] maxs = new float[CHANNELS_COUNT * MAX_VALUES_COUNT];
+
+    /**
+     * Client state
+     */
+    private static class Client {
+        private final Messenger messenger;
+        // client in this process receives message instance itself, it must not be recycled
+        private final boolean isLocal;
+        private final long minIntervalNanos;
+        private final StreamQueue<Message> queue;
+        private long lastLocationNanos = 0;
+        private long lastSensorNanos = 0;
+
+        /**
+         * Constructor
+         * @param messenger Client messenger
+         * @param minIntervalMillis Minimum interval between messages of same kind (milliseconds)
+         */
+        Client(Messenger messenger, int minIntervalMillis) {
+            this.messenger = messenger;
+            isLocal = messenger.getBinder() instanceof Binder;
+            minIntervalNanos = Math.max(0, minIntervalMillis) * 1000000L;
+            queue = new StreamQueue<>(QUEUE_CAPACITY, SEND_WINDOW, CREDIT_PERIOD_NANOS,
+                    SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    /**
+     * Private constructor
+     */
+    private LiveStream() {
+    }
+
+    /**
+     * Get singleton instance
+     * @return LiveStream singleton
+     */
+    static synchronized LiveStream getInstance() {
+        if (sInstance == null) {
+            sInstance = new LiveStream();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Get binder accepting client registrations, starts dispatcher thread
+     * @return Binder
+     */
+    synchronized IBinder getBinder() {
+        if (messenger == null) {
+            final HandlerThread thread = new HandlerThread(TAG);
+            thread.start();
+            handler = new Handler(thread.getLooper(), this::handleMessage);
+            messenger = new Messenger(handler);
+        }
+        return messenger.getBinder();
+    }
+
+    /**
+     * Handle client requests on dispatcher thread
+     * @param msg Message
+     * @return True if handled
+     */
+    private boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_REGISTER:
+                if (msg.replyTo != null) {
+                    unregister(msg.replyTo);
+                    clients.add(new Client(msg.replyTo, msg.arg1));
+                    if (!isActive) {
+                        isActive = true;
+                        handler.postDelayed(aggregateTask, AGGREGATE_PERIOD_MILLIS);
+                    }
+                    if (Logger.DEBUG) { Log.d(TAG, "[client registered, interval " + msg.arg1 + " ms]"); }
+                }
+                return true;
+            case MSG_UNREGISTER:
+                if (msg.replyTo != null) {
+                    unregister(msg.replyTo);
+                }
+                return true;
+            case MSG_ACK:
+                if (msg.replyTo != null) {
+                    acknowledge(msg.replyTo, msg.arg1);
+                }
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Restore send budget of client, send its queued messages
+     * @param clientMessenger Client messenger
+     * @param count Number of processed messages
+     */
+    private void acknowledge(Messenger clientMessenger, int count) {
+        for (Client client : clients) {
+            if (client.messenger.equals(clientMessenger)) {
+                synchronized (client) {
+                    client.queue.ack(count);
+                }
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Remove client
+     * @param clientMessenger Client messenger
+     */
+    private void unregister(Messenger clientMessenger) {
+        for (Client client : clients) {
+            if (client.messenger.equals(clientMessenger)) {
+                clients.remove(client);
+                synchronized (client) {
+                    Message msg;
+                    while ((msg = client.queue.remove()) != null) {
+                        msg.recycle();
+                    }
+                }
+                if (Logger.DEBUG) { Log.d(TAG, "[client removed, dropped " + client.queue.getDroppedCount() + "]"); }
+            }
+        }
+        if (clients.isEmpty() && isActive) {
+            isActive = false;
+            handler.removeCallbacks(aggregateTask);
+        }
+    }
+
+    /**
+     * Publish accepted location, called on logger thread
+     * before location is simplified and stored, so clients get every accepted fix
+     * @param loc Location
+     */
+    void onLocation(Location loc) {
+        if (!isActive) {
+            return;
+        }
+        final Bundle data = new Bundle();
+        data.putLong(KEY_TIME, loc.getTime());
+        data.putDouble(KEY_LATITUDE, loc.getLatitude());
+        data.putDouble(KEY_LONGITUDE, loc.getLongitude());
+        if (loc.hasAltitude()) {
+            data.putDouble(KEY_ALTITUDE, loc.getAltitude());
+        }
+        if (loc.hasAccuracy()) {
+            data.putFloat(KEY_ACCURACY, loc.getAccuracy());
+        }
+        if (loc.hasSpeed()) {
+            data.putFloat(KEY_SPEED, loc.getSpeed());
+        }
+        if (loc.hasBearing()) {
+            data.putFloat(KEY_BEARING, loc.getBearing());
+        }
+        data.putString(KEY_PROVIDER, loc.getProvider());
+        final long now = SystemClock.elapsedRealtimeNanos();
+        boolean isQueued = false;
+        for (Client client : clients) {
+            synchronized (client) {
+                if (now - client.lastLocationNanos < client.minIntervalNanos) {
+                    continue;
+                }
+                client.lastLocationNanos = now;
+                enqueue(client, obtain(MSG_LOCATION, data));
+                isQueued = true;
+            }
+        }
+        if (isQueued) {
+            handler.removeCallbacks(dispatchTask);
+            handler.post(dispatchTask);
+        }
+    }
+
+    /**
+     * Add accepted sensor sample to aggregates, called on logger thread
+     * @param channel Sensor channel
+     * @param values Sample values
+     */
+    void onSample(SensorChannel channel, float[] values) {
+        if (!isActive) {
+            return;
+        }
+        final int i = channel.ordinal();
+        final int offset = i * MAX_VALUES_COUNT;
+        final int valuesCount = Math.min(channel.getValuesCount(), MAX_VALUES_COUNT);
+        synchronized (counts) {
+            final boolean isFirst = counts[i]++ == 0;
+            for (int j = 0; j < valuesCount; j++) {
+                final float value = values[j];
+                sums[offset + j] = isFirst ? value : sums[offset + j] + value;
+                mins[offset + j] = isFirst ? value : Math.min(mins[offset + j], value);
+                maxs[offset + j] = isFirst ? value : Math.max(maxs[offset + j], value);
+            }
+        }
+    }
+
+    /**
+     * Enqueue aggregates of finished period and send them, on dispatcher thread
+     */
+    private void publishAggregates() {
+        final Bundle[] aggregates = new Bundle[CHANNELS_COUNT];
+        boolean hasAggregates = false;
+        synchronized (counts) {
+            for (SensorChannel channel : SensorChannel.values()) {
+                final int i = channel.ordinal();
+                if (counts[i] == 0) {
+                    continue;
+                }
+                final int offset = i * MAX_VALUES_COUNT;
+                final int valuesCount = Math.min(channel.getValuesCount(), MAX_VALUES_COUNT);
+                final float[] mean = new float[valuesCount];
+                for (int j = 0; j < valuesCount; j++) {
+                    mean[j] = (float) (sums[offset + j] / counts[i]);
+                }
+                final Bundle data = new Bundle();
+                data.putString(KEY_CHANNEL, channel.name());
+                data.putInt(KEY_COUNT, counts[i]);
+                data.putFloatArray(KEY_MEAN, mean);
+                data.putFloatArray(KEY_MIN, Arrays.copyOfRange(mins, offset, offset + valuesCount));
+                data.putFloatArray(KEY_MAX, Arrays.copyOfRange(maxs, offset, offset + valuesCount));
+                aggregates[i] = data;
+                counts[i] = 0;
+                hasAggregates = true;
+            }
+        }
+        if (hasAggregates) {
+            final long now = SystemClock.elapsedRealtimeNanos();
+            for (Client client : clients) {
+                synchronized (client) {
+                    if (now - client.lastSensorNanos < client.minIntervalNanos) {
+                        continue;
+                    }
+                    client.lastSensorNanos = now;
+                    for (Bundle data : aggregates) {
+                        if (data != null) {
+                            enqueue(client, obtain(MSG_SENSOR, data));
+                        }
+                    }
+                }
+            }
+        }
+        // also sends messages held while clients were over budget
+        dispatch();
+        if (isActive) {
+            handler.postDelayed(aggregateTask, AGGREGATE_PERIOD_MILLIS);
+        }
+    }
+
+    /**
+     * Get message with payload
+     * @param what Message code
+     * @param data Payload, may be shared by messages to different clients
+     * @return Message
+     */
+    private static Message obtain(int what, Bundle data) {
+        final Message msg = Message.obtain(null, what);
+        msg.setData(data);
+        return msg;
+    }
+
+    /**
+     * Add message to client queue, drop oldest one if full
+     * @param client Client
+     * @param msg Message
+     */
+    private static void enqueue(Client client, Message msg) {
+        final Message dropped = client.queue.offer(msg);
+        if (dropped != null) {
+            dropped.recycle();
+        }
+    }
+
+    /**
+     * Send queued messages to clients within their send budget, on dispatcher thread.
+     * Clients that died are removed.
+     */
+    private void dispatch() {
+        final long now = SystemClock.elapsedRealtimeNanos();
+        for (Client client : clients) {
+            Message msg;
+            while (true) {
+                synchronized (client) {
+                    msg = client.queue.poll(now);
+                }
+                if (msg == null) {
+                    break;
+                }
+                try {
+                    client.messenger.send(msg);
+                } catch (RemoteException e) {
+                    if (Logger.DEBUG) { Log.d(TAG, "[client lost: " + e + "]"); }
+                    msg.recycle();
+                    unregister(client.messenger);
+                    break;
+                }
+                // remote message was copied to parcel
+                if (!client.isLocal) {
+                    msg.recycle();
+                }
+            }
+        }
+    }
+}
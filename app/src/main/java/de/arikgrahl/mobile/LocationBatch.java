@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.location.Location;
+
+/**
+ * Buffer of locations waiting for deferred batch write.
+ * Location objects are allocated once and reused by following batches.
+ * Battery state is captured when location is added.
+ */
+
+class LocationBatch {
+
+    static final int CAPACITY = 64;
+
+    private final Location[] locations = new Location[CAPACITY];
+    private final double[] filteredLats = new double[CAPACITY];
+    private final double[] filteredLons = new double[CAPACITY];
+    private final String[] batteryStatuses = new String[CAPACITY];
+    private final float[] batteryLevels = new float[CAPACITY];
+    private final int[] segments = new int[CAPACITY];
+    private final float[] distances = new float[CAPACITY];
+    private int count = 0;
+
+    /**
+     * Add location to batch
+     * @param loc Location, copied
+     * @param filteredLat Filtered latitude or NaN
+     * @param filteredLon Filtered longitude or NaN
+     * @param batteryStatus Battery status
+     * @param batteryLevel Battery level
+     * @param segment Track segment
+     * @param distance Distance from previous position in segment
+     * @return True if batch is full and should be written
+     */
+    boolean add(Location loc, double filteredLat, double filteredLon, String batteryStatus, float batteryLevel,
+                int segment, float distance) {
+        if (locations[count] == null) {
+            locations[count] = new Location(loc);
+        } else {
+            locations[count].set(loc);
+        }
+        filteredLats[count] = filteredLat;
+        filteredLons[count] = filteredLon;
+        batteryStatuses[count] = batteryStatus;
+        batteryLevels[count] = batteryLevel;
+        segments[count] = segment;
+        distances[count] = distance;
+        count++;
+        return count == CAPACITY;
+    }
+
+    /**
+     * Mark batch as written, start new one
+     */
+    void clear() {
+        count = 0;
+    }
+
+    /**
+     * Get number of buffered locations
+     * @return Count
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Check whether batch is empty
+     * @return True if empty
+     */
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Get buffered location
+     * @param i Index
+     * @return Location
+     */
+    Location getLocation(int i) {
+        return locations[i];
+    }
+
+    /**
+     * Get filtered latitude of buffered location
+     * @param i Index
+     * @return Latitude or NaN
+     */
+    double getFilteredLatitude(int i) {
+        return filteredLats[i];
+    }
+
+    /**
+     * Get filtered longitude of buffered location
+     * @param i Index
+     * @return Longitude or NaN
+     */
+    double getFilteredLongitude(int i) {
+        return filteredLons[i];
+    }
+
+    /**
+     * Get battery status captured with location
+     * @param i Index
+     * @return Status
+     */
+    String getBatteryStatus(int i) {
+        return batteryStatuses[i];
+    }
+
+    /**
+     * Get battery level captured with location
+     * @param i Index
+     * @return Level
+     */
+    float getBatteryLevel(int i) {
+        return batteryLevels[i];
+    }
+
+    /**
+     * Get track segment of buffered location
+     * @param i Index
+     * @return Segment
+     */
+    int getSegment(int i) {
+        return segments[i];
+    }
+
+    /**
+     * Get distance of buffered location from previous one in segment
+     * @param i Index
+     * @return Distance (meters)
+     */
+    float getDistance(int i) {
+        return distances[i];
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+/**
+ * Application scope, owns lifecycle of shared database connection.
+ * Connection opened by any component stays open while process is alive
+ * and is released only when system asks to trim memory.
+ */
+
+public class LoggerApplication extends Application {
+
+    private static final String TAG = LoggerApplication.class.getSimpleName();
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (Logger.DEBUG) { Log.d(TAG, "[onTrimMemory: " + level + "]"); }
+        // hidden UI alone is not memory pressure, keep connection for next resume
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            DbAccess.release();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (Logger.DEBUG) { Log.d(TAG, "[onLowMemory]"); }
+        DbAccess.release();
+    }
+}
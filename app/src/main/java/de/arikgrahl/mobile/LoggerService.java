@@ -17,19 +17,17 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
-import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
@@ -42,6 +40,15 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.app.TaskStackBuilder;
 import androidx.preference.PreferenceManager;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
 import static de.arikgrahl.mobile.MainActivity.UPDATED_PREFS;
 
 /**
@@ -53,45 +60,90 @@ import static de.arikgrahl.mobile.MainActivity.UPDATED_PREFS;
 public class LoggerService extends Service {
 
     private static final String TAG = LoggerService.class.getSimpleName();
-    public static final String BROADCAST_LOCATION_DISABLED = "de.arikgrahl.mobile.broadcast.location_disabled";
-    public static final String BROADCAST_LOCATION_GPS_DISABLED = "de.arikgrahl.mobile.broadcast.gps_disabled";
-    public static final String BROADCAST_LOCATION_GPS_ENABLED = "de.arikgrahl.mobile.broadcast.gps_enabled";
-    public static final String BROADCAST_LOCATION_NETWORK_DISABLED = "de.arikgrahl.mobile.broadcast.network_disabled";
-    public static final String BROADCAST_LOCATION_NETWORK_ENABLED = "de.arikgrahl.mobile.broadcast.network_enabled";
-    public static final String BROADCAST_LOCATION_PERMISSION_DENIED = "de.arikgrahl.mobile.broadcast.location_permission_denied";
-    public static final String BROADCAST_LOCATION_STARTED = "de.arikgrahl.mobile.broadcast.location_started";
-    public static final String BROADCAST_LOCATION_STOPPED = "de.arikgrahl.mobile.broadcast.location_stopped";
-    public static final String BROADCAST_LOCATION_UPDATED = "de.arikgrahl.mobile.broadcast.location_updated";
+    public static final String TRIGGER_CAPTURE = "extra_trigger_capture";
+    public static final String WRITE_METRICS = "extra_write_metrics";
+    private static final String METRICS_FILE = "metrics.txt";
     private boolean liveSync = false;
     private Intent syncIntent;
 
-    private static volatile boolean isRunning = false;
+    private volatile boolean isRunning = false;
     private LoggerThread thread;
     private Looper looper;
+    private Handler handler;
     private LocationManager locManager;
     private LocationListener locListener;
     private DbAccess db;
     private int maxAccuracy;
     private float minDistance;
-    private long accelerometerFrequency;
     private long minTimeMillis;
-    // max time tolerance is half min time, but not more that 5 min
-    final private long minTimeTolerance = Math.min(minTimeMillis / 2, 5 * 60 * 1000);
-    final private long maxTimeMillis = minTimeMillis + minTimeTolerance;
-
-    private static Location lastLocation = null;
-    private static volatile long lastUpdateRealtime = 0;
+    // current updates interval, differs from min time when adaptive, also read by dump()
+    private volatile long intervalMillis;
+    private AdaptiveScheduler scheduler = null;
+    private final ProviderArbiter providerArbiter = new ProviderArbiter();
+    private final EventBus bus = EventBus.getInstance();
+    private final LiveStream stream = LiveStream.getInstance();
+    // realtime of last accepted location update (milliseconds)
+    private volatile long lastUpdateRealtime = 0;
 
     private final int NOTIFICATION_ID = 1526756640;
     private NotificationManager mNotificationManager;
     private boolean useGps;
     private boolean useNet;
 
-    SensorManager sensorManager;
-    private Sensor accelerometer;
-    private SensorEventListener accelerometerListener;
+    private SensorManager sensorManager;
+    private final Map<SensorChannel, Long> sensorFrequencies = new EnumMap<>(SensorChannel.class);
+    private final List<SensorSampler> sensorSamplers = new ArrayList<>();
+
+    private final BatteryState batteryState = new BatteryState();
+    private final SampleClock clock = new SampleClock();
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+
+    private static final String FILTER_RAW = "raw";
+    private static final String FILTER_FILTERED = "filtered";
+    private static final String FILTER_BOTH = "both";
+    private String positionFilter = FILTER_RAW;
+    private final KalmanFilter kalmanFilter = new KalmanFilter();
+
+    private final RestartPolicy restartPolicy = new RestartPolicy();
+
+    private BestFixSelector bestFixSelector = null;
+    private final Runnable bestFixTimeout = this::flushBestFix;
+
+    // inside low power zone only network updates are requested at long interval
+    private static final long LOW_POWER_INTERVAL_MILLIS = 15 * 60 * 1000;
+    private ZoneSet zones = new ZoneSet(new ArrayList<>());
+    // set on logger thread, read by dump() on binder thread
+    private volatile boolean isLowPower = false;
 
-    private long mAccLast = 0;
+    private boolean useProfiles = false;
+    // set on logger thread, read by dump() on binder thread
+    private volatile LoggingProfile profile = LoggingProfile.FULL;
+
+    private TripSegmenter segmenter = new TripSegmenter(0);
+    private StayPointDetector stayDetector = null;
+
+    private LocationBatch locationBatch = null;
+    private long batchLatencyMillis;
+    private final Runnable batchTimeout = this::flushLocationBatch;
+
+    private boolean useTriggeredCapture = false;
+    private float captureMagnitude;
+    private float captureJerk;
+    private TriggeredCapture triggeredCapture = null;
+
+    private float accelerometerDeadband = 0;
+    private int spectrumSize = 0;
+    private SpectrumSampler spectrumSampler = null;
+
+    private DeadReckoning deadReckoning = null;
+    private long deadReckoningMillis;
+    private final Location syntheticLocation = new Location(DeadReckoning.PROVIDER);
+    private final Runnable deadReckoningTick = this::addSyntheticLocation;
+
+    private TrackSimplifier simplifier = null;
+    private Location heldLocation = null;
+    private double heldFilteredLat;
+    private double heldFilteredLon;
 
     /**
      * Basic initializations.
@@ -100,10 +152,7 @@ public class LoggerService extends Service {
     public void onCreate() {
         if (Logger.DEBUG) { Log.d(TAG, "[onCreate]"); }
 
-        sensorManager = (SensorManager)getSystemService(Context.SENSOR_SERVICE);
-        accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        accelerometerListener = new mAccelerationListener();
-        sensorManager.registerListener(accelerometerListener, accelerometer, SensorManager.SENSOR_DELAY_FASTEST);
+        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
 
         mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (mNotificationManager != null) {
@@ -113,26 +162,37 @@ public class LoggerService extends Service {
         locManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
         locListener = new mLocationListener();
 
-        // read user preferences
+        // pipeline must be ready before first location update
+        db = DbAccess.getInstance();
+        db.open(this);
+
+        syncIntent = new Intent(getApplicationContext(), WebSyncService.class);
+
+        // read user preferences, continue segmentation
         updatePreferences();
+        loadZones();
+
+        // location updates are handled on logger thread
+        thread = new LoggerThread();
+        thread.start();
+        looper = thread.getLooper();
+        handler = new Handler(looper);
+
+        batteryState.register(this, handler);
+        clock.register(this, handler);
+        batteryState.setListener(this::handleBatteryChanged);
+        profile = selectProfile();
 
         boolean hasLocationUpdates = requestLocationUpdates();
 
         if (hasLocationUpdates) {
             setRunning(true);
-            sendBroadcast(BROADCAST_LOCATION_STARTED);
-
-            syncIntent = new Intent(getApplicationContext(), WebSyncService.class);
+            publish(EventBus.Type.LOCATION_STARTED);
 
-            thread = new LoggerThread();
-            thread.start();
-            looper = thread.getLooper();
-
-            db = DbAccess.getInstance();
-            db.open(this);
+            handler.post(this::registerSensors);
 
             // start websync service if needed
-            if (liveSync && db.needsSync()) {
+            if (isLiveSync() && db.needsSync()) {
                 startService(syncIntent);
             }
         }
@@ -151,8 +211,20 @@ public class LoggerService extends Service {
         if (Logger.DEBUG) { Log.d(TAG, "[onStartCommand]"); }
 
         final boolean prefsUpdated = (intent != null) && intent.getBooleanExtra(UPDATED_PREFS, false);
+        final boolean triggerCapture = (intent != null) && intent.getBooleanExtra(TRIGGER_CAPTURE, false);
+        final boolean writeMetrics = (intent != null) && intent.getBooleanExtra(WRITE_METRICS, false);
         if (prefsUpdated) {
-            handlePrefsUpdated();
+            if (handler != null) {
+                handler.post(this::handlePrefsUpdated);
+            }
+        } else if (triggerCapture) {
+            if (handler != null) {
+                handler.post(this::triggerCapture);
+            }
+        } else if (writeMetrics) {
+            if (handler != null) {
+                handler.post(this::writeMetrics);
+            }
         } else {
             final Notification notification = showNotification(NOTIFICATION_ID);
             startForeground(NOTIFICATION_ID, notification);
@@ -166,17 +238,49 @@ public class LoggerService extends Service {
     }
 
     /**
-     * When user updated preferences, restart location updates, stop service on failure
+     * When user updated preferences, restart location updates, stop service on failure.
+     * Runs on logger thread, which owns sensor and location pipeline.
      */
     private void handlePrefsUpdated() {
+        // store fixes held back before their setup changes
+        flushBestFix();
+        flushSimplifier();
+        flushLocationBatch();
+        flushStayDetector();
+        unregisterSensors();
         // restart updates
         updatePreferences();
+        loadZones();
+        isLowPower = false;
+        profile = selectProfile();
         if (isRunning && !restartUpdates()) {
             // no valid providers after preferences update
             stopSelf();
+        } else if (isRunning) {
+            registerSensors();
         }
     }
 
+    /**
+     * Start manual capture, on logger thread
+     */
+    private void triggerCapture() {
+        if (triggeredCapture != null) {
+            triggeredCapture.trigger();
+        }
+    }
+
+    /**
+     * Unregister sensors and store all held back data, on logger thread
+     */
+    private void releasePipeline() {
+        unregisterSensors();
+        flushBestFix();
+        flushSimplifier();
+        flushLocationBatch();
+        flushStayDetector();
+    }
+
     /**
      * Check if user granted permission to access location.
      *
@@ -195,18 +299,201 @@ public class LoggerService extends Service {
         return locManager.getAllProviders().contains(provider);
     }
 
+    /**
+     * Check if service runs in dedicated process
+     *
+     * @return True if isolated, false otherwise
+     */
+    boolean isIsolated() {
+        return false;
+    }
+
+    /**
+     * Get default preferences.
+     * In dedicated process preferences are reloaded from disk,
+     * as they are written by settings in main process.
+     *
+     * @return Preferences
+     */
+    @SuppressWarnings("deprecation")
+    private SharedPreferences getPreferences() {
+        if (isIsolated()) {
+            return getSharedPreferences(getPackageName() + "_preferences", Context.MODE_MULTI_PROCESS);
+        }
+        return PreferenceManager.getDefaultSharedPreferences(this);
+    }
+
     /**
      * Reread preferences
      */
     private void updatePreferences() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-        accelerometerFrequency = Long.parseLong(prefs.getString(SettingsActivity.KEY_ACCELEROMETER_FREQUENCY, "0"));
+        SharedPreferences prefs = getPreferences();
+        for (SensorChannel channel : SensorChannel.values()) {
+            sensorFrequencies.put(channel, Long.parseLong(prefs.getString(channel.getFrequencyKey(), "0")));
+        }
         minTimeMillis = Long.parseLong(prefs.getString(SettingsActivity.KEY_MIN_TIME, getString(R.string.pref_mintime_default))) * 1000;
+        final long maxTimeMillis = Long.parseLong(prefs.getString(SettingsActivity.KEY_ADAPTIVE_MAX_TIME, "0")) * 1000;
+        scheduler = (maxTimeMillis > minTimeMillis) ? new AdaptiveScheduler(minTimeMillis, maxTimeMillis) : null;
+        intervalMillis = (scheduler != null) ? scheduler.getInterval() : minTimeMillis;
         minDistance = Float.parseFloat(prefs.getString(SettingsActivity.KEY_MIN_DISTANCE, getString(R.string.pref_mindistance_default)));
         maxAccuracy = Integer.parseInt(prefs.getString(SettingsActivity.KEY_MIN_ACCURACY, getString(R.string.pref_minaccuracy_default)));
         useGps = prefs.getBoolean(SettingsActivity.KEY_USE_GPS, providerExists(LocationManager.GPS_PROVIDER));
         useNet = prefs.getBoolean(SettingsActivity.KEY_USE_NET, providerExists(LocationManager.NETWORK_PROVIDER));
         liveSync = prefs.getBoolean(SettingsActivity.KEY_LIVE_SYNC, false);
+        useProfiles = prefs.getBoolean(SettingsActivity.KEY_BATTERY_PROFILES, false);
+        positionFilter = prefs.getString(SettingsActivity.KEY_POSITION_FILTER, FILTER_RAW);
+        final float simplifyTolerance = Float.parseFloat(prefs.getString(SettingsActivity.KEY_SIMPLIFY_TOLERANCE, "0"));
+        simplifier = (simplifyTolerance > 0) ? new TrackSimplifier(simplifyTolerance) : null;
+        bestFixSelector = prefs.getBoolean(SettingsActivity.KEY_BEST_FIX, false) ? new BestFixSelector() : null;
+        useTriggeredCapture = prefs.getBoolean(SettingsActivity.KEY_TRIGGERED_CAPTURE, false);
+        captureMagnitude = Float.parseFloat(prefs.getString(SettingsActivity.KEY_CAPTURE_MAGNITUDE, getString(R.string.pref_capture_magnitude_default)));
+        captureJerk = Float.parseFloat(prefs.getString(SettingsActivity.KEY_CAPTURE_JERK, "0"));
+        spectrumSize = Integer.parseInt(prefs.getString(SettingsActivity.KEY_SPECTRUM_SIZE, "0"));
+        accelerometerDeadband = Float.parseFloat(prefs.getString(SettingsActivity.KEY_ACCELEROMETER_DEADBAND, "0"));
+        final float stayRadius = Float.parseFloat(prefs.getString(SettingsActivity.KEY_STAY_RADIUS, "0"));
+        final long stayDwell = Long.parseLong(prefs.getString(SettingsActivity.KEY_STAY_DWELL, getString(R.string.pref_stay_dwell_default)));
+        final long segmentGap = Long.parseLong(prefs.getString(SettingsActivity.KEY_SEGMENT_GAP, "0"));
+        segmenter = new TripSegmenter(segmentGap);
+        restoreSegmenter();
+        stayDetector = (stayRadius > 0) ? new StayPointDetector(stayRadius, stayDwell) : null;
+        batchLatencyMillis = Long.parseLong(prefs.getString(SettingsActivity.KEY_BATCH_LATENCY, "0")) * 1000;
+        if (batchLatencyMillis <= 0) {
+            locationBatch = null;
+        } else if (locationBatch == null) {
+            locationBatch = new LocationBatch();
+        }
+        deadReckoningMillis = Long.parseLong(prefs.getString(SettingsActivity.KEY_DEAD_RECKONING, "0")) * 1000;
+        deadReckoning = (deadReckoningMillis > 0) ? new DeadReckoning() : null;
+    }
+
+    /**
+     * Select logging profile for current battery state
+     * @return Profile
+     */
+    private LoggingProfile selectProfile() {
+        if (!useProfiles) {
+            return LoggingProfile.FULL;
+        }
+        return LoggingProfile.select(batteryState.getStatus(), batteryState.getLevel(), profile);
+    }
+
+    /**
+     * Switch logging profile on battery change, without restarting service
+     */
+    private void handleBatteryChanged() {
+        final LoggingProfile selected = selectProfile();
+        if (selected == profile || !isRunning) {
+            return;
+        }
+        if (Logger.DEBUG) { Log.d(TAG, "[logging profile: " + profile + " -> " + selected + "]"); }
+        profile = selected;
+        unregisterSensors();
+        if (!restartUpdates()) {
+            stopSelf();
+            return;
+        }
+        registerSensors();
+    }
+
+    /**
+     * Check whether live synchronization should run
+     * @return True if enabled and allowed by logging profile
+     */
+    private boolean isLiveSync() {
+        return liveSync && profile.hasLiveSync();
+    }
+
+    /**
+     * Get current location updates interval,
+     * includes adaptive interval, low power zone and logging profile
+     * @return Interval (milliseconds)
+     */
+    private long getUpdatesInterval() {
+        final long interval = intervalMillis * profile.getIntervalFactor();
+        return isLowPower ? Math.max(interval, LOW_POWER_INTERVAL_MILLIS) : interval;
+    }
+
+    /**
+     * Reload geofenced zones from database
+     */
+    private void loadZones() {
+        if (db != null) {
+            zones = new ZoneSet(db.getZones());
+        }
+    }
+
+    /**
+     * Register listeners for all sensor channels with positive frequency.
+     * Sensor events are delivered on logger thread.
+     */
+    private void registerSensors() {
+        if (sensorManager == null || !profile.hasSensors()) {
+            return;
+        }
+        for (SensorChannel channel : SensorChannel.values()) {
+            final long frequency = sensorFrequencies.get(channel);
+            if (frequency <= 0 || (channel == SensorChannel.ACCELEROMETER && (useTriggeredCapture || spectrumSize > 0))) {
+                continue;
+            }
+            final Sensor sensor = sensorManager.getDefaultSensor(channel.getSensorType());
+            if (sensor == null) {
+                if (Logger.DEBUG) { Log.d(TAG, "[sensor not available: " + channel + "]"); }
+                continue;
+            }
+            final float deviation = (channel == SensorChannel.ACCELEROMETER) ? accelerometerDeadband : 0;
+            final SensorSampler sampler = new SensorSampler(channel, frequency, deviation, clock, db);
+            sensorManager.registerListener(sampler, sensor, sampler.getSamplingPeriodUs(), handler);
+            sensorSamplers.add(sampler);
+            if (Logger.DEBUG) { Log.d(TAG, "[sensor registered: " + channel + " at " + frequency + " Hz]"); }
+        }
+        if (deadReckoning != null) {
+            final Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            if (sensor != null) {
+                sensorManager.registerListener(deadReckoning, sensor, SensorManager.SENSOR_DELAY_NORMAL, handler);
+            } else {
+                deadReckoning = null;
+            }
+        }
+        if (useTriggeredCapture) {
+            final Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            if (sensor != null) {
+                triggeredCapture = new TriggeredCapture(clock, db, captureMagnitude, captureJerk);
+                sensorManager.registerListener(triggeredCapture, sensor, triggeredCapture.getSamplingPeriodUs(), handler);
+            }
+        }
+        if (spectrumSize > 0) {
+            final Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            if (sensor != null) {
+                spectrumSampler = new SpectrumSampler(spectrumSize, clock, db);
+                sensorManager.registerListener(spectrumSampler, sensor, spectrumSampler.getSamplingPeriodUs(), handler);
+            }
+        }
+    }
+
+    /**
+     * Unregister all sensor listeners, write pending samples
+     */
+    private void unregisterSensors() {
+        for (SensorSampler sampler : sensorSamplers) {
+            sensorManager.unregisterListener(sampler);
+            sampler.flush();
+        }
+        sensorSamplers.clear();
+        if (triggeredCapture != null) {
+            sensorManager.unregisterListener(triggeredCapture);
+            triggeredCapture.flush();
+            triggeredCapture = null;
+        }
+        if (spectrumSampler != null) {
+            sensorManager.unregisterListener(spectrumSampler);
+            spectrumSampler = null;
+        }
+        if (deadReckoning != null) {
+            sensorManager.unregisterListener(deadReckoning);
+        }
+        if (handler != null) {
+            handler.removeCallbacks(deadReckoningTick);
+        }
     }
 
     /**
@@ -229,15 +516,19 @@ public class LoggerService extends Service {
     private boolean requestLocationUpdates() {
         boolean hasLocationUpdates = false;
         if (canAccessLocation()) {
+            final long interval = getUpdatesInterval();
+            providerArbiter.setMinTime(interval);
             if (useNet) {
-                locManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, minTimeMillis, minDistance, locListener, looper);
+                locManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, interval, minDistance, locListener, looper);
                 if (locManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
                     hasLocationUpdates = true;
                     if (Logger.DEBUG) { Log.d(TAG, "[Using net provider]"); }
                 }
             }
-            if (useGps) {
-                locManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, minTimeMillis, minDistance, locListener, looper);
+            // in low power mode use gps only if network is not available
+            final boolean isNetworkOnly = isLowPower || profile.isNetworkOnly();
+            if (useGps && !(isNetworkOnly && hasLocationUpdates)) {
+                locManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, interval, minDistance, locListener, looper);
                 if (locManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
                     hasLocationUpdates = true;
                     if (Logger.DEBUG) { Log.d(TAG, "[Using gps provider]"); }
@@ -245,12 +536,12 @@ public class LoggerService extends Service {
             }
             if (!hasLocationUpdates) {
                 // no location provider available
-                sendBroadcast(BROADCAST_LOCATION_DISABLED);
+                publish(EventBus.Type.LOCATION_DISABLED);
                 if (Logger.DEBUG) { Log.d(TAG, "[No available location updates]"); }
             }
         } else {
             // can't access location
-            sendBroadcast(BROADCAST_LOCATION_PERMISSION_DENIED);
+            publish(EventBus.Type.LOCATION_PERMISSION_DENIED);
             if (Logger.DEBUG) { Log.d(TAG, "[Location permission denied]"); }
         }
 
@@ -267,6 +558,18 @@ public class LoggerService extends Service {
         if (canAccessLocation()) {
             locManager.removeUpdates(locListener);
         }
+        batteryState.unregister(this);
+        clock.unregister(this);
+
+        if (thread != null) {
+            // write pending data on logger thread, wait until it is drained
+            handler.post(this::releasePipeline);
+            thread.interrupt();
+            thread.quitSafely();
+            joinThread();
+        }
+        thread = null;
+
         if (db != null) {
             db.close();
         }
@@ -274,57 +577,70 @@ public class LoggerService extends Service {
         setRunning(false);
 
         mNotificationManager.cancel(NOTIFICATION_ID);
-        sendBroadcast(BROADCAST_LOCATION_STOPPED);
-
-        if (thread != null) {
-            thread.interrupt();
-        }
-        thread = null;
+        publish(EventBus.Type.LOCATION_STOPPED);
 
     }
 
-    @Override
-    public IBinder onBind(Intent intent) {
-        throw new UnsupportedOperationException("Not implemented");
+    /**
+     * Wait for logger thread to process pending messages and finish
+     */
+    private void joinThread() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[logger thread join interrupted]"); }
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Check if logger service is running.
+     * Print pipeline metrics and logger state,
+     * eg. adb shell dumpsys activity service de.arikgrahl.mobile/.LoggerService
      *
-     * @return True if running, false otherwise
+     * @param fd File descriptor
+     * @param writer Writer
+     * @param args Arguments
      */
-    public static boolean isRunning() {
-        return isRunning;
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("LoggerService running=" + isRunning + " profile=" + profile +
+                " lowPower=" + isLowPower + " interval=" + getUpdatesInterval() + " ms");
+        metrics.dump(writer);
     }
 
-
     /**
-     * Set service running state
-     * @param isRunning True if running, false otherwise
+     * Write pipeline metrics snapshot to app external files directory
      */
-    private void setRunning(boolean isRunning) {
-        LoggerService.isRunning = isRunning;
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putBoolean(SettingsActivity.KEY_LOGGER_RUNNING, isRunning);
-        editor.apply();
+    private void writeMetrics() {
+        final File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            if (Logger.DEBUG) { Log.d(TAG, "[metrics snapshot: storage not available]"); }
+            return;
+        }
+        final File file = new File(dir, METRICS_FILE);
+        try {
+            metrics.writeSnapshot(file);
+            if (Logger.DEBUG) { Log.d(TAG, "[metrics snapshot written: " + file + "]"); }
+        } catch (IOException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[metrics snapshot failed: " + e + "]"); }
+        }
     }
 
-    /**
-     * Return realtime of last update in milliseconds
-     *
-     * @return Time or zero if not set
-     */
-    public static long lastUpdateRealtime() {
-        return lastUpdateRealtime;
+    @Override
+    public IBinder onBind(Intent intent) {
+        if (intent != null && StreamService.ACTION_STREAM_INTERNAL.equals(intent.getAction())) {
+            return stream.getBinder();
+        }
+        return null;
     }
 
     /**
-     * Reset realtime of last update
+     * Set service running state, publish it to other processes
+     * @param isRunning True if running, false otherwise
      */
-    public static void resetUpdateRealtime() {
-
-        lastUpdateRealtime = 0;
+    private void setRunning(boolean isRunning) {
+        this.isRunning = isRunning;
+        LoggerStatus.setRunning(this, isRunning);
     }
 
     /**
@@ -393,38 +709,257 @@ public class LoggerService extends Service {
     }
 
     /**
-     * Send broadcast message
-     * @param broadcast Broadcast message
+     * Publish event to subscribers, bridge it to main process if running isolated
+     * @param type Event type
      */
-    private void sendBroadcast(String broadcast) {
-        Intent intent = new Intent(broadcast);
-        sendBroadcast(intent);
+    private void publish(EventBus.Type type) {
+        final EventBus.Event event = (type == EventBus.Type.LOCATION_UPDATED)
+                ? new EventBus.Event(type, lastUpdateRealtime, EventBus.Event.UNKNOWN, EventBus.Event.UNKNOWN, null)
+                : new EventBus.Event(type);
+        bus.post(event);
+        if (isIsolated()) {
+            bus.postRemote(this, event);
+        }
     }
 
-    private class mAccelerationListener implements  SensorEventListener {
+    /**
+     * Filter, simplify and store accepted location
+     * @param loc Location
+     */
+    private void processLocation(Location loc) {
+        if (zones.isPrivate(loc.getLatitude(), loc.getLongitude())) {
+            if (Logger.DEBUG) { Log.d(TAG, "[location inside privacy zone skipped]"); }
+            metrics.onFix(PipelineMetrics.Fix.SKIPPED_PRIVACY);
+            return;
+        }
+        final boolean isSynthetic = DeadReckoning.PROVIDER.equals(loc.getProvider());
+        double filteredLat = Double.NaN;
+        double filteredLon = Double.NaN;
+        if (!positionFilter.equals(FILTER_RAW) && !isSynthetic) {
+            final float accuracy = loc.hasAccuracy() ? loc.getAccuracy() : maxAccuracy;
+            kalmanFilter.update(loc.getLatitude(), loc.getLongitude(), accuracy, loc.getElapsedRealtimeNanos() / 1000000);
+            if (positionFilter.equals(FILTER_FILTERED)) {
+                loc.setLatitude(kalmanFilter.getLatitude());
+                loc.setLongitude(kalmanFilter.getLongitude());
+            } else if (positionFilter.equals(FILTER_BOTH)) {
+                filteredLat = kalmanFilter.getLatitude();
+                filteredLon = kalmanFilter.getLongitude();
+            }
+        }
+        // live clients get every accepted fix, before simplification holds it back
+        stream.onLocation(loc);
 
-        @Override
-        public void onSensorChanged(SensorEvent event) {
-            if (Logger.DEBUG) { Log.d(TAG, "[accelerometerFrequency: \t" + accelerometerFrequency + "]"); }
+        if (simplifier == null) {
+            storeLocation(loc, filteredLat, filteredLon);
+        } else {
+            simplifyLocation(loc, filteredLat, filteredLon);
+        }
+
+        if (deadReckoning != null && !isSynthetic) {
+            // restart estimation from real fix
+            deadReckoning.reset(loc);
+            handler.removeCallbacks(deadReckoningTick);
+            handler.postDelayed(deadReckoningTick, deadReckoningMillis);
+        }
+    }
 
-            if (accelerometerFrequency == 0) {
-                return;
+    /**
+     * Store dead reckoning estimate if device is moving, schedule next one
+     */
+    private void addSyntheticLocation() {
+        if (deadReckoning == null || db == null) {
+            return;
+        }
+        if (!deadReckoning.estimate(SystemClock.elapsedRealtime(), syntheticLocation)) {
+            // beyond horizon, wait for real fix
+            return;
+        }
+        if (deadReckoning.isMoving() && syntheticLocation.getAccuracy() <= maxAccuracy) {
+            if (Logger.DEBUG) { Log.d(TAG, "[synthetic location: " + syntheticLocation + "]"); }
+            metrics.onFix(PipelineMetrics.Fix.SYNTHETIC);
+            processLocation(syntheticLocation);
+        }
+        handler.postDelayed(deadReckoningTick, deadReckoningMillis);
+    }
+
+    /**
+     * Process most accurate location of finished interval
+     */
+    private void flushBestFix() {
+        if (handler != null) {
+            handler.removeCallbacks(bestFixTimeout);
+        }
+        if (bestFixSelector != null && db != null) {
+            final Location best = bestFixSelector.take();
+            if (best != null) {
+                processLocation(best);
             }
-            if ((event.timestamp / 1000) - mAccLast < (1000000 / accelerometerFrequency)) {
-                return;
+        }
+    }
+
+    /**
+     * Write location to database, start live synchronization, notify about update.
+     * Batched location is written and notified with its batch.
+     * @param loc Location
+     * @param filteredLat Filtered latitude or NaN
+     * @param filteredLon Filtered longitude or NaN
+     */
+    private void storeLocation(Location loc, double filteredLat, double filteredLon) {
+        metrics.onFix(PipelineMetrics.Fix.STORED);
+        final boolean hasFiltered = !Double.isNaN(filteredLat) && !Double.isNaN(filteredLon);
+        segmenter.offer(hasFiltered ? filteredLat : loc.getLatitude(), hasFiltered ? filteredLon : loc.getLongitude(),
+                loc.getTime() / 1000);
+        final int segment = segmenter.getSegment();
+        final float distance = segmenter.getDistance();
+        if (locationBatch != null) {
+            final boolean isFirst = locationBatch.isEmpty();
+            if (locationBatch.add(loc, filteredLat, filteredLon, batteryState.getStatus(), batteryState.getLevel(),
+                    segment, distance)) {
+                flushLocationBatch();
+            } else if (isFirst) {
+                handler.postDelayed(batchTimeout, batchLatencyMillis);
             }
-            mAccLast = event.timestamp / 1000;
-            if (Logger.DEBUG) { Log.d(TAG, "[accelerometer data tracked: \t" + event.values[0] + "\t" + event.values[1] + "\t" + event.values[2] + "]"); }
-            if (db == null) {
-                db = DbAccess.getInstance();
-                db.open(getApplicationContext());
+        } else {
+            final boolean isWritten = db.writeLocation(loc, batteryState.getStatus(), batteryState.getLevel(),
+                    filteredLat, filteredLon, segment, distance);
+            metrics.onLocationsWritten(1);
+            if (isWritten) {
+                if (isLiveSync()) {
+                    startService(syncIntent);
+                }
+                publish(EventBus.Type.LOCATION_UPDATED);
             }
-            db.writeAcceleration(System.currentTimeMillis() / 1000, event.values[0], event.values[1], event.values[2]);
         }
+        if (stayDetector != null && stayDetector.offer(loc.getLatitude(), loc.getLongitude(), loc.getTime() / 1000)) {
+            writeStay();
+        }
+    }
 
-        @Override
-        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    /**
+     * Write detected stay, collapse its uploaded positions
+     */
+    private void writeStay() {
+        // stay positions must be in database before they are collapsed
+        flushLocationBatch();
+        db.writeStay(stayDetector.getLatitude(), stayDetector.getLongitude(),
+                stayDetector.getArrival(), stayDetector.getDeparture(), stayDetector.getCount());
+        // stop ends segment
+        segmenter.breakSegment();
+        storeSimplification();
+    }
+
+    /**
+     * Continue segmentation after last stored position
+     */
+    private void restoreSegmenter() {
+        if (db == null) {
+            return;
+        }
+        try (Cursor cursor = db.getLastPosition()) {
+            if (cursor.moveToFirst()) {
+                segmenter.restore(cursor.getInt(cursor.getColumnIndex(DbContract.Positions.COLUMN_SEGMENT)),
+                        DbAccess.getSummaryLatitude(cursor), DbAccess.getSummaryLongitude(cursor),
+                        cursor.getLong(cursor.getColumnIndex(DbContract.Positions.COLUMN_TIME)));
+            }
+        }
+    }
+
+    /**
+     * Write stay in progress, if long enough
+     */
+    private void flushStayDetector() {
+        if (stayDetector != null && db != null && stayDetector.flush()) {
+            writeStay();
+        }
+    }
+
+    /**
+     * Write batched locations in one transaction, start live synchronization,
+     * notify about update once per batch
+     */
+    private void flushLocationBatch() {
+        if (handler != null) {
+            handler.removeCallbacks(batchTimeout);
+        }
+        if (locationBatch == null || locationBatch.isEmpty() || db == null) {
+            return;
+        }
+        final int size = locationBatch.size();
+        final boolean isWritten = db.writeLocations(locationBatch);
+        locationBatch.clear();
+        metrics.onLocationsWritten(size);
+        storeSimplification();
+        if (isWritten) {
+            if (isLiveSync()) {
+                startService(syncIntent);
+            }
+            publish(EventBus.Type.LOCATION_UPDATED);
+        }
+    }
 
+    /**
+     * Pass location through track simplifier.
+     * Location may be held back until next fix decides whether it is needed.
+     * @param loc Location
+     * @param filteredLat Filtered latitude or NaN
+     * @param filteredLon Filtered longitude or NaN
+     */
+    private void simplifyLocation(Location loc, double filteredLat, double filteredLon) {
+        switch (simplifier.offer(loc.getLatitude(), loc.getLongitude())) {
+            case TrackSimplifier.STORE_CURRENT:
+                storeLocation(loc, filteredLat, filteredLon);
+                break;
+            case TrackSimplifier.STORE_PREVIOUS:
+                storeLocation(heldLocation, heldFilteredLat, heldFilteredLon);
+                holdLocation(loc, filteredLat, filteredLon);
+                break;
+            case TrackSimplifier.HOLD_CURRENT:
+                holdLocation(loc, filteredLat, filteredLon);
+                break;
+        }
+    }
+
+    /**
+     * Keep copy of location held by simplifier
+     * @param loc Location
+     * @param filteredLat Filtered latitude or NaN
+     * @param filteredLon Filtered longitude or NaN
+     */
+    private void holdLocation(Location loc, double filteredLat, double filteredLon) {
+        if (heldLocation == null) {
+            heldLocation = new Location(loc);
+        } else {
+            heldLocation.set(loc);
+        }
+        heldFilteredLat = filteredLat;
+        heldFilteredLon = filteredLon;
+    }
+
+    /**
+     * Store location held by simplifier and simplification statistics
+     */
+    private void flushSimplifier() {
+        if (simplifier == null || db == null) {
+            return;
+        }
+        if (simplifier.flush()) {
+            storeLocation(heldLocation, heldFilteredLat, heldFilteredLon);
+        }
+        storeSimplification();
+    }
+
+    /**
+     * Add simplification statistics kept by simplifier to track,
+     * called with location batch, segment end and simplifier flush instead of every fix
+     */
+    private void storeSimplification() {
+        if (simplifier == null || db == null) {
+            return;
+        }
+        final long fixes = simplifier.takeOfferedCount();
+        // maximum deviation changes only with offered fixes
+        if (fixes > 0) {
+            db.updateTrackSimplification(fixes, simplifier.getMaxDeviation());
         }
     }
 
@@ -437,30 +972,58 @@ public class LoggerService extends Service {
         public void onLocationChanged(Location loc) {
 
             if (Logger.DEBUG) { Log.d(TAG, "[location changed: " + loc + "]"); }
+            metrics.onFix(PipelineMetrics.Fix.RECEIVED);
+
+            // provider wall time may drift from sensor times, use common time base
+            if (loc.getElapsedRealtimeNanos() > 0) {
+                loc.setTime(clock.realtimeToEpochMillis(loc.getElapsedRealtimeNanos()));
+            }
 
             if (!skipLocation(loc)) {
 
-                lastLocation = loc;
+                // carried to ui with location updated event
                 lastUpdateRealtime = loc.getElapsedRealtimeNanos() / 1000000;
 
-                IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-                Intent battery = getApplicationContext().registerReceiver(null, ifilter);
-                int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
-                String batteryStatus;
-                if (status == BatteryManager.BATTERY_STATUS_CHARGING ||
-                    status == BatteryManager.BATTERY_STATUS_FULL) {
-                    batteryStatus = "charging";
-                } else {
-                    batteryStatus = "discharging";
+                updateLowPower(loc);
+
+                if (bestFixSelector == null) {
+                    processLocation(loc);
+                } else if (bestFixSelector.offer(loc)) {
+                    // first candidate, close interval after min time
+                    handler.postDelayed(bestFixTimeout, getUpdatesInterval());
                 }
-                int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-                int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-                float batteryLevel = level * 100 / (float)scale;
 
-                db.writeLocation(loc, batteryStatus, batteryLevel);
-                sendBroadcast(BROADCAST_LOCATION_UPDATED);
-                if (liveSync) {
-                    startService(syncIntent);
+                if (scheduler != null && !isLowPower && loc.hasSpeed()) {
+                    adaptInterval(loc.getSpeed());
+                }
+            }
+        }
+
+        /**
+         * Switch low power mode when entering or leaving low power zone
+         * @param loc Location
+         */
+        private void updateLowPower(Location loc) {
+            final boolean inLowPowerZone = zones.isLowPower(loc.getLatitude(), loc.getLongitude());
+            if (inLowPowerZone != isLowPower) {
+                isLowPower = inLowPowerZone;
+                if (Logger.DEBUG) { Log.d(TAG, "[low power zone " + (isLowPower ? "entered" : "left") + "]"); }
+                if (!restartUpdates()) {
+                    stopSelf();
+                }
+            }
+        }
+
+        /**
+         * Update interval for current speed, re-request updates on change
+         * @param speed Speed (m/s)
+         */
+        private void adaptInterval(float speed) {
+            if (scheduler.offer(speed)) {
+                intervalMillis = scheduler.getInterval();
+                if (Logger.DEBUG) { Log.d(TAG, "[adaptive interval: " + intervalMillis + " ms at " + speed + " m/s]"); }
+                if (!restartUpdates()) {
+                    stopSelf();
                 }
             }
         }
@@ -474,21 +1037,29 @@ public class LoggerService extends Service {
             // accuracy radius too high
             if (loc.hasAccuracy() && loc.getAccuracy() > maxAccuracy) {
                 if (Logger.DEBUG) { Log.d(TAG, "[location accuracy above limit: " + loc.getAccuracy() + " > " + maxAccuracy + "]"); }
-                // reset gps provider to get better accuracy even if time and distance criteria don't change
+                metrics.onFix(PipelineMetrics.Fix.SKIPPED_ACCURACY);
+                // reset gps provider to get better accuracy even if time and distance criteria don't change,
+                // back off if restarts don't help
                 if (loc.getProvider().equals(LocationManager.GPS_PROVIDER)) {
-                    restartUpdates();
+                    final long now = SystemClock.elapsedRealtime();
+                    final boolean isRestarted = restartPolicy.shouldRestart(now);
+                    metrics.onRestart(isRestarted);
+                    if (isRestarted) {
+                        restartUpdates();
+                        if (Logger.DEBUG) { Log.d(TAG, "[gps restarts in last hour: " + restartPolicy.getRestartsLastHour(now) + "]"); }
+                    }
                 }
                 return true;
             }
-            // use network provider only if recent gps data is missing
-            if (loc.getProvider().equals(LocationManager.NETWORK_PROVIDER) && lastLocation != null) {
-                // we received update from gps provider not later than after maxTime period
-                long elapsedMillis = SystemClock.elapsedRealtime() - lastUpdateRealtime;
-                if (lastLocation.getProvider().equals(LocationManager.GPS_PROVIDER) && elapsedMillis < maxTimeMillis) {
-                    // skip network provider
-                    if (Logger.DEBUG) { Log.d(TAG, "[location network provider skipped]"); }
-                    return true;
-                }
+            if (loc.getProvider().equals(LocationManager.GPS_PROVIDER)) {
+                restartPolicy.reset();
+            }
+            // use lower priority provider only if recent better data is missing
+            final float accuracy = loc.hasAccuracy() ? loc.getAccuracy() : Float.NaN;
+            if (!providerArbiter.accept(loc.getProvider(), accuracy, loc.getElapsedRealtimeNanos() / 1000000)) {
+                if (Logger.DEBUG) { Log.d(TAG, "[location " + loc.getProvider() + " provider skipped]"); }
+                metrics.onFix(PipelineMetrics.Fix.SKIPPED_PROVIDER);
+                return true;
             }
             return false;
         }
@@ -501,9 +1072,9 @@ public class LoggerService extends Service {
         public void onProviderDisabled(String provider) {
             if (Logger.DEBUG) { Log.d(TAG, "[location provider " + provider + " disabled]"); }
             if (provider.equals(LocationManager.GPS_PROVIDER)) {
-                sendBroadcast(BROADCAST_LOCATION_GPS_DISABLED);
+                publish(EventBus.Type.GPS_DISABLED);
             } else if (provider.equals(LocationManager.NETWORK_PROVIDER)) {
-                sendBroadcast(BROADCAST_LOCATION_NETWORK_DISABLED);
+                publish(EventBus.Type.NETWORK_DISABLED);
             }
         }
 
@@ -515,9 +1086,9 @@ public class LoggerService extends Service {
         public void onProviderEnabled(String provider) {
             if (Logger.DEBUG) { Log.d(TAG, "[location provider " + provider + " enabled]"); }
             if (provider.equals(LocationManager.GPS_PROVIDER)) {
-                sendBroadcast(BROADCAST_LOCATION_GPS_ENABLED);
+                publish(EventBus.Type.GPS_ENABLED);
             } else if (provider.equals(LocationManager.NETWORK_PROVIDER)) {
-                sendBroadcast(BROADCAST_LOCATION_NETWORK_ENABLED);
+                publish(EventBus.Type.NETWORK_ENABLED);
             }
         }
 
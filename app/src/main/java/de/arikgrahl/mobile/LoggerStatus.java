@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.app.ActivityManager;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.PreferenceManager;
+
+import java.util.List;
+
+/**
+ * Logger status shared between processes.
+ * Logger service may run in separate process, so its state is published
+ * to this provider, hosted in main application process, instead of static fields.
+ * Running state is persisted together with logger process id,
+ * state of a process killed without cleanup is not reported as running.
+ * Last location update time is not kept here, it is delivered with location updated event.
+ * Status is only available through {@link #call}, table methods do nothing.
+ */
+
+public class LoggerStatus extends ContentProvider {
+
+    private static final String TAG = LoggerStatus.class.getSimpleName();
+
+    private static final Uri URI = Uri.parse("content://" + BuildConfig.APPLICATION_ID + ".status");
+    private static final String STATUS_FILE = "logger_status";
+
+    private static final String METHOD_GET = "get";
+    private static final String METHOD_SET_RUNNING = "setRunning";
+    // process list query result is reused for this time
+    private static final long ALIVE_CACHE_MILLIS = 2000;
+
+    private static final String KEY_RUNNING = SettingsActivity.KEY_LOGGER_RUNNING;
+    private static final String KEY_WAS_RUNNING = "wasRunning";
+    private static final String KEY_PID = "pid";
+    private static final String KEY_SERVICE = "service";
+
+    private SharedPreferences status;
+    // last liveness check, guarded by this
+    private int checkedPid = 0;
+    private boolean isCheckedAlive = false;
+    private long checkedRealtime = 0;
+
+    @Override
+    public boolean onCreate() {
+        status = getContext().getSharedPreferences(STATUS_FILE, Context.MODE_PRIVATE);
+        migrate();
+        return true;
+    }
+
+    /**
+     * Move running flag from default preferences, where it was stored by previous versions,
+     * so that logger still running before update is restarted
+     */
+    private void migrate() {
+        if (status.contains(KEY_RUNNING)) {
+            return;
+        }
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getContext());
+        if (prefs.contains(KEY_RUNNING)) {
+            if (Logger.DEBUG) { Log.d(TAG, "[migrating running state]"); }
+            status.edit().putBoolean(KEY_RUNNING, prefs.getBoolean(KEY_RUNNING, false)).apply();
+            prefs.edit().remove(KEY_RUNNING).apply();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        switch (method) {
+            case METHOD_GET:
+                final Bundle result = new Bundle();
+                final boolean wasRunning = status.getBoolean(KEY_RUNNING, false);
+                final boolean isRunning = wasRunning && isAlive(status.getInt(KEY_PID, 0));
+                result.putBoolean(KEY_RUNNING, isRunning);
+                result.putBoolean(KEY_WAS_RUNNING, wasRunning);
+                result.putString(KEY_SERVICE, isRunning ? status.getString(KEY_SERVICE, null) : null);
+                return result;
+            case METHOD_SET_RUNNING:
+                if (extras != null) {
+                    if (Logger.DEBUG) { Log.d(TAG, "[running: " + extras.getBoolean(KEY_RUNNING) + "]"); }
+                    status.edit()
+                            .putBoolean(KEY_RUNNING, extras.getBoolean(KEY_RUNNING))
+                            .putInt(KEY_PID, extras.getInt(KEY_PID))
+                            .putString(KEY_SERVICE, extras.getString(KEY_SERVICE))
+                            .apply();
+                }
+                return null;
+        }
+        return null;
+    }
+
+    /**
+     * Check if application process with given id is alive.
+     * Result is cached for short time, status is polled often by ui.
+     * @param pid Process id
+     * @return True if alive
+     */
+    private synchronized boolean isAlive(int pid) {
+        final long now = SystemClock.elapsedRealtime();
+        if (pid != checkedPid || now - checkedRealtime > ALIVE_CACHE_MILLIS) {
+            isCheckedAlive = queryAlive(pid);
+            checkedPid = pid;
+            checkedRealtime = now;
+        }
+        return isCheckedAlive;
+    }
+
+    /**
+     * Query running processes for application process with given id
+     * @param pid Process id
+     * @return True if found
+     */
+    private boolean queryAlive(int pid) {
+        final ActivityManager am = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null || pid == 0) {
+            return false;
+        }
+        final List<ActivityManager.RunningAppProcessInfo> processes = am.getRunningAppProcesses();
+        if (processes != null) {
+            for (ActivityManager.RunningAppProcessInfo process : processes) {
+                if (process.pid == pid) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get status
+     * @param context Context
+     * @return Status bundle, empty if not available
+     */
+    @NonNull
+    private static Bundle get(Context context) {
+        final Bundle result = context.getContentResolver().call(URI, METHOD_GET, null, null);
+        return (result != null) ? result : Bundle.EMPTY;
+    }
+
+    /**
+     * Check if logger service is running.
+     *
+     * @param context Context
+     * @return True if running, false otherwise
+     */
+    static boolean isRunning(Context context) {
+        return get(context).getBoolean(KEY_RUNNING, false);
+    }
+
+    /**
+     * Check if logger service was running when its process ended,
+     * eg. before application update
+     *
+     * @param context Context
+     * @return True if was running, false otherwise
+     */
+    static boolean wasRunning(Context context) {
+        return get(context).getBoolean(KEY_WAS_RUNNING, false);
+    }
+
+    /**
+     * Publish logger service running state
+     *
+     * @param context Logger service context
+     * @param isRunning True if running, false otherwise
+     */
+    static void setRunning(Context context, boolean isRunning) {
+        final Bundle extras = new Bundle();
+        extras.putBoolean(KEY_RUNNING, isRunning);
+        extras.putInt(KEY_PID, Process.myPid());
+        extras.putString(KEY_SERVICE, context.getClass().getName());
+        context.getContentResolver().call(URI, METHOD_SET_RUNNING, null, extras);
+    }
+
+    /**
+     * Get intent addressing logger service.
+     * Running service is addressed in its process, otherwise service
+     * selected in preferences.
+     *
+     * @param context Context
+     * @return Intent
+     */
+    static Intent getServiceIntent(Context context) {
+        final String service = get(context).getString(KEY_SERVICE);
+        if (service != null) {
+            return new Intent().setClassName(context, service);
+        }
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final boolean isolated = prefs.getBoolean(SettingsActivity.KEY_ISOLATED_PROCESS, false);
+        return new Intent(context, isolated ? IsolatedLoggerService.class : LoggerService.class);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Battery-aware logging profiles
+ */
+
+enum LoggingProfile {
+
+    /** User settings */
+    FULL(1, true, false, true),
+    /** Longer interval, no sensors */
+    REDUCED(4, false, false, true),
+    /** Network provider only, no sensors, no live synchronization */
+    SURVIVAL(10, false, true, false);
+
+    // battery level thresholds (percent), profile is left only after recovering by hysteresis
+    private static final float REDUCED_LEVEL = 30;
+    private static final float SURVIVAL_LEVEL = 15;
+    private static final float HYSTERESIS = 5;
+
+    private final int intervalFactor;
+    private final boolean hasSensors;
+    private final boolean isNetworkOnly;
+    private final boolean hasLiveSync;
+
+    LoggingProfile(int intervalFactor, boolean hasSensors, boolean isNetworkOnly, boolean hasLiveSync) {
+        this.intervalFactor = intervalFactor;
+        this.hasSensors = hasSensors;
+        this.isNetworkOnly = isNetworkOnly;
+        this.hasLiveSync = hasLiveSync;
+    }
+
+    /**
+     * Select profile for battery state
+     * @param status Battery status
+     * @param level Battery level (percent), negative if unknown
+     * @param current Current profile
+     * @return Profile
+     */
+    static LoggingProfile select(String status, float level, LoggingProfile current) {
+        if (BatteryState.STATUS_CHARGING.equals(status) || level < 0) {
+            return FULL;
+        }
+        if (level < SURVIVAL_LEVEL || (current == SURVIVAL && level < SURVIVAL_LEVEL + HYSTERESIS)) {
+            return SURVIVAL;
+        }
+        if (level < REDUCED_LEVEL || (current != FULL && level < REDUCED_LEVEL + HYSTERESIS)) {
+            return REDUCED;
+        }
+        return FULL;
+    }
+
+    /**
+     * Get multiplier of location updates interval
+     * @return Factor
+     */
+    int getIntervalFactor() {
+        return intervalFactor;
+    }
+
+    /**
+     * Are sensors captured
+     * @return True if captured
+     */
+    boolean hasSensors() {
+        return hasSensors;
+    }
+
+    /**
+     * Is only network provider used
+     * @return True if network only
+     */
+    boolean isNetworkOnly() {
+        return isNetworkOnly;
+    }
+
+    /**
+     * Is live synchronization allowed
+     * @return True if allowed
+     */
+    boolean hasLiveSync() {
+        return hasLiveSync;
+    }
+}
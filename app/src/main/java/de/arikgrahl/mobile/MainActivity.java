@@ -12,10 +12,8 @@ package de.arikgrahl.mobile;
 import android.Manifest;
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.PorterDuff;
@@ -88,6 +86,10 @@ public class MainActivity extends AppCompatActivity {
 
     private static boolean syncError = false;
     private boolean isUploading = false;
+    // logger state, refreshed on resume and kept up to date by events
+    private boolean isLoggerRunning = false;
+    // realtime of last location update event, zero if none since resume
+    private long lastUpdateRealtime = 0;
     private TextView syncErrorLabel;
     private TextView syncLabel;
     private TextView syncLed;
@@ -95,6 +97,7 @@ public class MainActivity extends AppCompatActivity {
     private TextView locLed;
 
     private DbAccess db;
+    private final EventBus bus = EventBus.getInstance();
     private static String TXT_START;
     private static String TXT_STOP;
     private Button toggleButton;
@@ -128,7 +131,8 @@ public class MainActivity extends AppCompatActivity {
         db = DbAccess.getInstance();
         db.open(this);
 
-        if (!LoggerService.isRunning()) {
+        isLoggerRunning = LoggerStatus.isRunning(this);
+        if (!isLoggerRunning) {
             startLogger();
         }
     }
@@ -148,16 +152,19 @@ public class MainActivity extends AppCompatActivity {
             updateTrackLabel(trackName);
         }
 
-        if (LoggerService.isRunning()) {
+        isLoggerRunning = LoggerStatus.isRunning(this);
+        if (isLoggerRunning) {
             toggleButton.setText(TXT_STOP);
             setLocLed(LED_GREEN);
         } else {
             toggleButton.setText(TXT_START);
             setLocLed(LED_RED);
         }
-        registerBroadcastReceiver();
+        // updates missed while paused, label falls back to last stored position
+        lastUpdateRealtime = 0;
+        bus.subscribe(this, eventListener);
         updateStatus();
-        if (!LoggerService.isRunning()) {
+        if (!isLoggerRunning) {
             startLogger();
         }
     }
@@ -168,7 +175,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         if (Logger.DEBUG) { Log.d(TAG, "[onPause]"); }
-        unregisterReceiver(mBroadcastReceiver);
+        bus.unsubscribe(this, eventListener);
         if (db != null) {
             db.close();
         }
@@ -262,9 +269,12 @@ public class MainActivity extends AppCompatActivity {
         if (requestCode == RESULT_PREFS_UPDATED) {
             // Preferences updated
             updatePreferences();
-            if (LoggerService.isRunning()) {
+            if (isLoggerRunning) {
+                // settings are written asynchronously, commit waits for pending writes,
+                // so that logger running in separate process reads them from disk
+                PreferenceManager.getDefaultSharedPreferences(this).edit().commit();
                 // restart logging
-                Intent intent = new Intent(MainActivity.this, LoggerService.class);
+                Intent intent = LoggerStatus.getServiceIntent(MainActivity.this);
                 intent.putExtra(UPDATED_PREFS, true);
                 startService(intent);
             }
@@ -293,7 +303,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view View
      */
     public void toggleLogging(@SuppressWarnings("UnusedParameters") View view) {
-        if (LoggerService.isRunning()) {
+        if (isLoggerRunning) {
             stopLogger();
         } else {
             startLogger();
@@ -306,7 +316,7 @@ public class MainActivity extends AppCompatActivity {
     private void startLogger() {
         // start tracking
         if (db.getTrackName() != null) {
-            Intent intent = new Intent(MainActivity.this, LoggerService.class);
+            Intent intent = LoggerStatus.getServiceIntent(MainActivity.this);
             startService(intent);
         } else {
             showNoTrackWarning();
@@ -318,7 +328,7 @@ public class MainActivity extends AppCompatActivity {
      */
     private void stopLogger() {
         // stop tracking
-        Intent intent = new Intent(MainActivity.this, LoggerService.class);
+        Intent intent = LoggerStatus.getServiceIntent(MainActivity.this);
         stopService(intent);
     }
 
@@ -346,7 +356,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view View
      */
     public void newTrack(@SuppressWarnings("UnusedParameters") View view) {
-        if (LoggerService.isRunning()) {
+        if (isLoggerRunning) {
             showToast(getString(R.string.logger_running_warning));
         } else if (db.needsSync()) {
             showNotSyncedWarning();
@@ -419,6 +429,19 @@ public class MainActivity extends AppCompatActivity {
         if (summaryPositions != null) {
             summaryPositions.setText(getResources().getQuantityString(R.plurals.summary_positions, positionsCount, positionsCount));
         }
+        final TextView summarySimplification = dialog.findViewById(R.id.summary_simplification);
+        if (summarySimplification != null && summary.isSimplified()) {
+            final long retainedPercent = Math.round(summary.getRetainedRatio() * 100);
+            final long maxDeviation = Math.round(summary.getMaxDeviation());
+            summarySimplification.setText(getString(R.string.summary_simplification, retainedPercent, maxDeviation));
+            summarySimplification.setVisibility(View.VISIBLE);
+        }
+        final TextView summaryCompression = dialog.findViewById(R.id.summary_compression);
+        if (summaryCompression != null && summary.isCompressed()) {
+            final String ratio = nf.format(summary.getCompressionRatio());
+            summaryCompression.setText(getString(R.string.summary_compression, ratio, summary.getSamplesCount()));
+            summaryCompression.setVisibility(View.VISIBLE);
+        }
     }
 
     /**
@@ -508,7 +531,7 @@ public class MainActivity extends AppCompatActivity {
                     return;
                 }
                 db.newTrack(trackName);
-                LoggerService.resetUpdateRealtime();
+                lastUpdateRealtime = 0;
                 updateTrackLabel(trackName);
                 updateStatus();
                 dialog.cancel();
@@ -568,19 +591,20 @@ public class MainActivity extends AppCompatActivity {
         }
         locLabel.setText(timeString);
         // Change led if more than 2 update periods elapsed since last location update
-        if (LoggerService.isRunning() && (timestamp == 0 || elapsed > pref_minTimeMillis * 2)) {
+        if (isLoggerRunning && (timestamp == 0 || elapsed > pref_minTimeMillis * 2)) {
             setLocLed(LED_YELLOW);
         }
     }
 
     /**
      * Update synchronization status label and led
-     * @param unsynced Count of not synchronized positions
+     * @param unsyncedPositions Count of not synchronized positions
+     * @param unsyncedSamples Count of not synchronized sensor samples
      */
-    private void updateSyncStatus(int unsyncedPositions, int unsyncedAccelerations) {
+    private void updateSyncStatus(int unsyncedPositions, int unsyncedSamples) {
         String text;
-        if (unsyncedPositions > 0 || unsyncedAccelerations > 0) {
-            text = getResources().getQuantityString(R.plurals.label_positions_behind, unsyncedPositions, unsyncedPositions) + "\n" + getResources().getQuantityString(R.plurals.label_accelerations_behind, unsyncedAccelerations, unsyncedAccelerations);
+        if (unsyncedPositions > 0 || unsyncedSamples > 0) {
+            text = getResources().getQuantityString(R.plurals.label_positions_behind, unsyncedPositions, unsyncedPositions) + "\n" + getResources().getQuantityString(R.plurals.label_samples_behind, unsyncedSamples, unsyncedSamples);
             if (syncError) {
                 setSyncLed(LED_RED);
             } else {
@@ -598,10 +622,10 @@ public class MainActivity extends AppCompatActivity {
      * Update location tracking and synchronization status
      */
     private void updateStatus() {
-        updateLocationLabel(LoggerService.lastUpdateRealtime());
+        updateLocationLabel(lastUpdateRealtime);
         // get sync status
         int countUnsyncedPositions = db.countUnsyncedPositions();
-        int countUnsyncedAccelerations = db.countUnsyncedAccelerations();
+        int countUnsyncedSamples = db.countUnsyncedSamples();
         String error = db.getError();
         if (error != null) {
             if (Logger.DEBUG) { Log.d(TAG, "[sync error: " + error + "]"); }
@@ -609,7 +633,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             resetSyncError();
         }
-        updateSyncStatus(countUnsyncedPositions, countUnsyncedAccelerations);
+        updateSyncStatus(countUnsyncedPositions, countUnsyncedSamples);
     }
 
     /**
@@ -660,48 +684,27 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Register broadcast receiver for synchronization
-     * and tracking status updates
-     */
-    private void registerBroadcastReceiver() {
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(LoggerService.BROADCAST_LOCATION_STARTED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_STOPPED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_UPDATED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_DISABLED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_GPS_DISABLED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_NETWORK_DISABLED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_GPS_ENABLED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_NETWORK_ENABLED);
-        filter.addAction(LoggerService.BROADCAST_LOCATION_PERMISSION_DENIED);
-        filter.addAction(GpxExportService.BROADCAST_EXPORT_FAILED);
-        filter.addAction(GpxExportService.BROADCAST_EXPORT_DONE);
-        filter.addAction(WebSyncService.BROADCAST_SYNC_DONE);
-        filter.addAction(WebSyncService.BROADCAST_SYNC_FAILED);
-        registerReceiver(mBroadcastReceiver, filter);
-    }
-
-    /**
-     * Broadcast receiver
+     * Service events listener
      */
-    private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
+    private final EventBus.Listener eventListener = new EventBus.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (Logger.DEBUG) { Log.d(TAG, "[broadcast received " + intent + "]"); }
-            if (intent == null || intent.getAction() == null) {
-                return;
-            }
-            switch (intent.getAction()) {
-                case LoggerService.BROADCAST_LOCATION_UPDATED:
-                    updateLocationLabel(LoggerService.lastUpdateRealtime());
+        public void onEvent(EventBus.Event event) {
+            if (Logger.DEBUG) { Log.d(TAG, "[event received " + event + "]"); }
+            switch (event.getType()) {
+                case LOCATION_UPDATED:
+                    lastUpdateRealtime = event.getRealtime();
+                    updateLocationLabel(lastUpdateRealtime);
                     setLocLed(LED_GREEN);
                     if (!pref_liveSync) {
-                        updateSyncStatus(db.countUnsyncedPositions(), db.countUnsyncedAccelerations());
+                        updateSyncStatus(db.countUnsyncedPositions(), db.countUnsyncedSamples());
                     }
                     break;
-                case WebSyncService.BROADCAST_SYNC_DONE:
-                    final int unsyncedCount = db.countUnsyncedPositions();
-                    updateSyncStatus(db.countUnsyncedPositions(), db.countUnsyncedAccelerations());
+                case SYNC_DONE: {
+                    final int unsyncedCount = (event.getPositions() != EventBus.Event.UNKNOWN)
+                            ? event.getPositions() : db.countUnsyncedPositions();
+                    final int unsyncedSamples = (event.getSamples() != EventBus.Event.UNKNOWN)
+                            ? event.getSamples() : db.countUnsyncedSamples();
+                    updateSyncStatus(unsyncedCount, unsyncedSamples);
                     setSyncLed(LED_GREEN);
                     // reset error flag and label
                     resetSyncError();
@@ -711,11 +714,16 @@ public class MainActivity extends AppCompatActivity {
                         isUploading = false;
                     }
                     break;
-                case (WebSyncService.BROADCAST_SYNC_FAILED): {
-                    updateSyncStatus(db.countUnsyncedPositions(), db.countUnsyncedAccelerations());
+                }
+                case SYNC_FAILED: {
+                    final int unsyncedCount = (event.getPositions() != EventBus.Event.UNKNOWN)
+                            ? event.getPositions() : db.countUnsyncedPositions();
+                    final int unsyncedSamples = (event.getSamples() != EventBus.Event.UNKNOWN)
+                            ? event.getSamples() : db.countUnsyncedSamples();
+                    updateSyncStatus(unsyncedCount, unsyncedSamples);
                     setSyncLed(LED_RED);
                     // set error flag and label
-                    String message = intent.getStringExtra("message");
+                    String message = event.getMessage();
                     setSyncError(message);
                     // showConfirm message if manual uploading
                     if (isUploading) {
@@ -724,44 +732,46 @@ public class MainActivity extends AppCompatActivity {
                     }
                     break;
                 }
-                case LoggerService.BROADCAST_LOCATION_STARTED:
+                case LOCATION_STARTED:
+                    isLoggerRunning = true;
                     toggleButton.setText(TXT_STOP);
                     showToast(getString(R.string.tracking_started));
                     setLocLed(LED_YELLOW);
                     break;
-                case LoggerService.BROADCAST_LOCATION_STOPPED:
+                case LOCATION_STOPPED:
+                    isLoggerRunning = false;
                     toggleButton.setText(TXT_START);
                     showToast(getString(R.string.tracking_stopped));
                     setLocLed(LED_RED);
                     break;
-                case LoggerService.BROADCAST_LOCATION_GPS_DISABLED:
+                case GPS_DISABLED:
                     showToast(getString(R.string.gps_disabled_warning), Toast.LENGTH_LONG);
                     break;
-                case LoggerService.BROADCAST_LOCATION_NETWORK_DISABLED:
+                case NETWORK_DISABLED:
                     showToast(getString(R.string.net_disabled_warning), Toast.LENGTH_LONG);
                     break;
-                case LoggerService.BROADCAST_LOCATION_DISABLED:
+                case LOCATION_DISABLED:
                     showToast(getString(R.string.location_disabled), Toast.LENGTH_LONG);
                     setLocLed(LED_RED);
                     break;
-                case LoggerService.BROADCAST_LOCATION_NETWORK_ENABLED:
+                case NETWORK_ENABLED:
                     showToast(getString(R.string.using_network), Toast.LENGTH_LONG);
                     break;
-                case LoggerService.BROADCAST_LOCATION_GPS_ENABLED:
+                case GPS_ENABLED:
                     showToast(getString(R.string.using_gps), Toast.LENGTH_LONG);
                     break;
-                case GpxExportService.BROADCAST_EXPORT_DONE:
+                case EXPORT_DONE:
                     showToast(getString(R.string.export_done), Toast.LENGTH_LONG);
                     break;
-                case GpxExportService.BROADCAST_EXPORT_FAILED: {
+                case EXPORT_FAILED: {
                     String message = getString(R.string.export_failed);
-                    if (intent.hasExtra("message")) {
-                        message += "\n" + intent.getStringExtra("message");
+                    if (event.getMessage() != null) {
+                        message += "\n" + event.getMessage();
                     }
                     showToast(message, Toast.LENGTH_LONG);
                     break;
                 }
-                case LoggerService.BROADCAST_LOCATION_PERMISSION_DENIED:
+                case LOCATION_PERMISSION_DENIED:
                     showToast(getString(R.string.location_permission_denied), Toast.LENGTH_LONG);
                     setLocLed(LED_RED);
                     ActivityCompat.requestPermissions(MainActivity.this, new String[]{Manifest.permission.ACCESS_FINE_LOCATION}, PERMISSION_LOCATION);
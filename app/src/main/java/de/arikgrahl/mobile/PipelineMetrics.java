@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and gauges of capture pipeline.
+ * Updated on logger thread without allocation, may be read from any thread.
+ */
+
+class PipelineMetrics {
+
+    /** Location fix outcomes */
+    enum Fix {
+        RECEIVED,
+        SKIPPED_ACCURACY,
+        SKIPPED_PROVIDER,
+        SKIPPED_PRIVACY,
+        SYNTHETIC,
+        STORED
+    }
+
+    /** Database connection events */
+    enum Connection {
+        ACQUIRED,
+        OPENED,
+        CLOSED
+    }
+
+    private static PipelineMetrics sInstance;
+
+    private static final int CHANNELS_COUNT = SensorChannel.values().length;
+
+    private final long startRealtime = SystemClock.elapsedRealtime();
+    private final AtomicLongArray events = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray decimated = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray buffered = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray flushed = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray flushes = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray lastFlushNanos = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray maxFlushNanos = new AtomicLongArray(CHANNELS_COUNT);
+    // realtime of oldest buffered sample, 0 if buffer empty
+    private final AtomicLongArray oldestUnflushed = new AtomicLongArray(CHANNELS_COUNT);
+    private final AtomicLongArray fixes = new AtomicLongArray(Fix.values().length);
+    // gps restarts on inaccurate fixes: performed, suppressed by backoff
+    private final AtomicLongArray restarts = new AtomicLongArray(2);
+    // location database writes (storage wakeups), locations written by them
+    private final AtomicLongArray locationWrites = new AtomicLongArray(2);
+    private final AtomicLongArray spectra = new AtomicLongArray(1);
+    private final AtomicLongArray captures = new AtomicLongArray(1);
+    private final AtomicLongArray connections = new AtomicLongArray(Connection.values().length);
+    // delivered bus events: count, last and max post to delivery latency
+    private final AtomicLongArray busEvents = new AtomicLongArray(3);
+
+    /**
+     * Private constructor
+     */
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Get singleton instance
+     * @return PipelineMetrics singleton
+     */
+    static synchronized PipelineMetrics getInstance() {
+        if (sInstance == null) {
+            sInstance = new PipelineMetrics();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Count sensor event received by listener
+     * @param channel Sensor channel
+     */
+    void onEvent(SensorChannel channel) {
+        events.incrementAndGet(channel.ordinal());
+    }
+
+    /**
+     * Count sensor event dropped by decimation to configured frequency
+     * @param channel Sensor channel
+     */
+    void onDecimated(SensorChannel channel) {
+        decimated.incrementAndGet(channel.ordinal());
+    }
+
+    /**
+     * Count sample added to buffer
+     * @param channel Sensor channel
+     * @param isFirst True if buffer was empty
+     */
+    void onBuffered(SensorChannel channel, boolean isFirst) {
+        buffered.incrementAndGet(channel.ordinal());
+        if (isFirst) {
+            oldestUnflushed.set(channel.ordinal(), SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Record buffer flush
+     * @param channel Sensor channel
+     * @param count Number of written samples
+     * @param latencyNanos Write duration (nanoseconds)
+     */
+    void onFlushed(SensorChannel channel, int count, long latencyNanos) {
+        final int i = channel.ordinal();
+        flushed.addAndGet(i, count);
+        flushes.incrementAndGet(i);
+        lastFlushNanos.set(i, latencyNanos);
+        if (latencyNanos > maxFlushNanos.get(i)) {
+            maxFlushNanos.set(i, latencyNanos);
+        }
+        oldestUnflushed.set(i, 0);
+    }
+
+    /**
+     * Count stored vibration spectrum
+     */
+    void onSpectrum() {
+        spectra.incrementAndGet(0);
+    }
+
+    /**
+     * Count triggered accelerometer capture
+     */
+    void onCapture() {
+        captures.incrementAndGet(0);
+    }
+
+    /**
+     * Count location fix outcome
+     * @param fix Outcome
+     */
+    void onFix(Fix fix) {
+        fixes.incrementAndGet(fix.ordinal());
+    }
+
+    /**
+     * Record location database write, single fix or batch
+     * @param count Number of written locations
+     */
+    void onLocationsWritten(int count) {
+        locationWrites.incrementAndGet(0);
+        locationWrites.addAndGet(1, count);
+    }
+
+    /**
+     * Count gps restart decision on inaccurate fix
+     * @param isRestarted True if restarted, false if suppressed by backoff
+     */
+    void onRestart(boolean isRestarted) {
+        restarts.incrementAndGet(isRestarted ? 0 : 1);
+    }
+
+    /**
+     * Count database connection event
+     * @param connection Event
+     */
+    void onConnection(Connection connection) {
+        connections.incrementAndGet(connection.ordinal());
+    }
+
+    /**
+     * Record event bus delivery
+     * @param latencyNanos Time from post to delivery on main thread (nanoseconds)
+     */
+    void onEventDelivered(long latencyNanos) {
+        busEvents.incrementAndGet(0);
+        busEvents.set(1, latencyNanos);
+        if (latencyNanos > busEvents.get(2)) {
+            busEvents.set(2, latencyNanos);
+        }
+    }
+
+    /**
+     * Print metrics
+     * @param writer Writer
+     */
+    void dump(PrintWriter writer) {
+        final long now = SystemClock.elapsedRealtime();
+        writer.println("Pipeline metrics (uptime " + (now - startRealtime) / 1000 + " s)");
+        writer.println("Sensors:");
+        for (SensorChannel channel : SensorChannel.values()) {
+            final int i = channel.ordinal();
+            final long received = events.get(i);
+            if (received == 0 && buffered.get(i) == 0) {
+                continue;
+            }
+            final long oldest = oldestUnflushed.get(i);
+            final long accepted = received - decimated.get(i);
+            writer.println("  " + channel +
+                    ": events=" + received +
+                    " decimated=" + decimated.get(i) +
+                    " buffered=" + buffered.get(i) +
+                    " flushed=" + flushed.get(i) +
+                    " pending=" + (buffered.get(i) - flushed.get(i)) +
+                    " compression=" + ((buffered.get(i) > 0 && accepted > 0) ?
+                            String.format(Locale.US, "%.1f", (double) accepted / buffered.get(i)) : "-") +
+                    " flushes=" + flushes.get(i) +
+                    " lastFlushMs=" + lastFlushNanos.get(i) / 1000000.0 +
+                    " maxFlushMs=" + maxFlushNanos.get(i) / 1000000.0 +
+                    " oldestUnflushedMs=" + ((oldest > 0) ? now - oldest : 0));
+        }
+        writer.println("  spectra=" + spectra.get(0) + " captures=" + captures.get(0));
+        writer.println("Location fixes:");
+        for (Fix fix : Fix.values()) {
+            writer.println("  " + fix.name().toLowerCase(Locale.US) + "=" + fixes.get(fix.ordinal()));
+        }
+        writer.println("  gps_restarts=" + restarts.get(0) + " suppressed=" + restarts.get(1));
+        final long writes = locationWrites.get(0);
+        writer.println("  location_writes=" + writes +
+                " written=" + locationWrites.get(1) +
+                " per_write=" + ((writes > 0) ?
+                        String.format(Locale.US, "%.1f", (double) locationWrites.get(1) / writes) : "-"));
+        writer.println("Events:");
+        writer.println("  delivered=" + busEvents.get(0) +
+                " lastLatencyMs=" + busEvents.get(1) / 1000000.0 +
+                " maxLatencyMs=" + busEvents.get(2) / 1000000.0);
+        writer.println("Database:");
+        writer.println("  transactions=" + DbWriter.getInstance().getTransactionsCount() +
+                " failed_writes=" + DbWriter.getInstance().getFailuresCount());
+        for (Connection connection : Connection.values()) {
+            writer.println("  " + connection.name().toLowerCase(Locale.US) + "=" + connections.get(connection.ordinal()));
+        }
+    }
+
+    /**
+     * Write metrics snapshot to file
+     * @param file File, overwritten
+     * @throws IOException Write error
+     */
+    void writeSnapshot(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("time=" + System.currentTimeMillis());
+            dump(writer);
+            if (writer.checkError()) {
+                throw new IOException("Write failed: " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Arbitration between fixes from different location providers.
+ * Fix from lower priority provider is accepted only if last accepted fix
+ * is older than preference window or is much less accurate.
+ */
+
+class ProviderArbiter {
+
+    static final String PROVIDER_GPS = "gps";
+    static final String PROVIDER_NETWORK = "network";
+
+    private static final int PRIORITY_GPS = 2;
+    private static final int PRIORITY_NETWORK = 1;
+    private static final int PRIORITY_OTHER = 0;
+
+    // max time tolerance is half min time, but not more that 5 min
+    private static final long MAX_TOLERANCE_MILLIS = 5 * 60 * 1000;
+    // lower priority fix wins if its accuracy radius is at least this times smaller
+    private static final float ACCURACY_FACTOR = 2;
+
+    private long windowMillis = 0;
+
+    private boolean hasLast = false;
+    private int lastPriority;
+    private float lastAccuracy;
+    private long lastRealtime;
+
+    /**
+     * Recompute preference window for given logging interval
+     * @param minTimeMillis Minimum time between updates (milliseconds)
+     */
+    void setMinTime(long minTimeMillis) {
+        final long tolerance = Math.min(minTimeMillis / 2, MAX_TOLERANCE_MILLIS);
+        windowMillis = minTimeMillis + tolerance;
+    }
+
+    /**
+     * Decide whether fix should be accepted, remember it if so
+     * @param provider Provider name
+     * @param accuracy Accuracy radius in meters, NaN if unknown
+     * @param realtime Monotonic fix time (milliseconds)
+     * @return True if accepted
+     */
+    boolean accept(String provider, float accuracy, long realtime) {
+        final int priority = getPriority(provider);
+        if (hasLast) {
+            final long elapsed = realtime - lastRealtime;
+            if (elapsed <= 0 && priority <= lastPriority) {
+                // duplicate, eg. delivered also by passive provider
+                return false;
+            }
+            if (priority < lastPriority && elapsed < windowMillis && !isMoreAccurate(accuracy)) {
+                return false;
+            }
+        }
+        hasLast = true;
+        lastPriority = priority;
+        lastAccuracy = accuracy;
+        lastRealtime = realtime;
+        return true;
+    }
+
+    /**
+     * Check whether accuracy is substantially better than last accepted
+     * @param accuracy Accuracy radius, NaN if unknown
+     * @return True if better
+     */
+    private boolean isMoreAccurate(float accuracy) {
+        return !Float.isNaN(accuracy) && !Float.isNaN(lastAccuracy)
+                && accuracy * ACCURACY_FACTOR <= lastAccuracy;
+    }
+
+    /**
+     * Get provider priority
+     * @param provider Provider name
+     * @return Priority, higher is better
+     */
+    private static int getPriority(String provider) {
+        if (PROVIDER_GPS.equals(provider)) {
+            return PRIORITY_GPS;
+        } else if (PROVIDER_NETWORK.equals(provider)) {
+            return PRIORITY_NETWORK;
+        }
+        return PRIORITY_OTHER;
+    }
+}
@@ -47,7 +47,7 @@ public class RestartBroadcastReceiver extends BroadcastReceiver {
                     }
                     break;
                 case MY_PACKAGE_REPLACED:
-                    boolean wasRunning = prefs.getBoolean(SettingsActivity.KEY_LOGGER_RUNNING, false);
+                    boolean wasRunning = LoggerStatus.wasRunning(context);
                     if (wasRunning) {
                         startLoggerService(context);
                     }
@@ -68,7 +68,7 @@ public class RestartBroadcastReceiver extends BroadcastReceiver {
             db.newTrack(AutoNamePreference.getAutoTrackName(context));
         }
         db.close();
-        Intent intent = new Intent(context, LoggerService.class);
+        Intent intent = LoggerStatus.getServiceIntent(context);
         ContextCompat.startForegroundService(context, intent);
     }
 }
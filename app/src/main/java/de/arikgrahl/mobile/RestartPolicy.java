@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Exponential backoff policy for location updates restarts
+ * triggered by inaccurate gps fixes.
+ * First restart is allowed immediately, following ones are delayed
+ * by doubling interval up to a cap. Policy is reset by accurate fix.
+ */
+
+class RestartPolicy {
+
+    private static final long INITIAL_DELAY_MILLIS = 15 * 1000;
+    private static final long MAX_DELAY_MILLIS = 10 * 60 * 1000;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    private static final int HISTORY_SIZE = 64;
+
+    private long delay = 0;
+    private long nextAllowed = 0;
+
+    // ring buffer of recent restart times
+    private final long[] history = new long[HISTORY_SIZE];
+    private int historyIndex = 0;
+    private int historyCount = 0;
+
+    /**
+     * Check whether restart is allowed now, record it if so
+     * @param now Monotonic time (milliseconds)
+     * @return True if updates should be restarted
+     */
+    boolean shouldRestart(long now) {
+        if (now < nextAllowed) {
+            return false;
+        }
+        delay = (delay == 0) ? INITIAL_DELAY_MILLIS : Math.min(delay * 2, MAX_DELAY_MILLIS);
+        nextAllowed = now + delay;
+        history[historyIndex] = now;
+        historyIndex = (historyIndex + 1) % HISTORY_SIZE;
+        historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+        return true;
+    }
+
+    /**
+     * Reset backoff after accurate fix
+     */
+    void reset() {
+        delay = 0;
+        nextAllowed = 0;
+    }
+
+    /**
+     * Get number of restarts during last hour
+     * @param now Monotonic time (milliseconds)
+     * @return Count (at most history size)
+     */
+    int getRestartsLastHour(long now) {
+        int count = 0;
+        for (int i = 0; i < historyCount; i++) {
+            if (now - history[i] < HOUR_MILLIS) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Buffer collecting sensor samples of one channel
+ * and flushing them to database in batches.
+ */
+
+class SampleBuffer {
+
+    private static final String TAG = SampleBuffer.class.getSimpleName();
+
+    private static final int CAPACITY = 100;
+    private static final long MAX_AGE_MILLIS = 5 * 1000;
+
+    private final SensorChannel channel;
+    private final SampleStore store;
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    private final Runnable writeTask = this::writeSamples;
+    private final long[] times = new long[CAPACITY];
+    private final float[] values;
+    private int count = 0;
+    private long firstRealtime = 0;
+
+    /**
+     * Constructor
+     * @param channel Sensor channel
+     * @param store Sample storage, eg. database access
+     */
+    SampleBuffer(SensorChannel channel, SampleStore store) {
+        this.channel = channel;
+        this.store = store;
+        values = new float[CAPACITY * channel.getValuesCount()];
+    }
+
+    /**
+     * Add sample, flush buffer if full or oldest sample is too old
+     * @param time Sample time (UTC milliseconds)
+     * @param sampleValues Sample values, at least channel values count
+     * @return True if buffer was flushed
+     */
+    synchronized boolean add(long time, float[] sampleValues) {
+        final long now = SystemClock.elapsedRealtime();
+        if (count == 0) {
+            firstRealtime = now;
+        }
+        metrics.onBuffered(channel, count == 0);
+        final int valuesCount = channel.getValuesCount();
+        times[count] = time;
+        System.arraycopy(sampleValues, 0, values, count * valuesCount, valuesCount);
+        count++;
+        if (count == CAPACITY || now - firstRealtime > MAX_AGE_MILLIS) {
+            flush();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write buffered samples to storage, waits for writer commit.
+     * Samples of failed write are dropped.
+     */
+    synchronized void flush() {
+        if (count > 0) {
+            final long start = SystemClock.elapsedRealtimeNanos();
+            if (store.write(writeTask)) {
+                metrics.onFlushed(channel, count, SystemClock.elapsedRealtimeNanos() - start);
+            } else if (Logger.DEBUG) {
+                Log.d(TAG, "[dropped " + count + " " + channel + " samples]");
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Write buffered samples, called on database writer
+     */
+    private void writeSamples() {
+        store.writeSamples(channel, times, values, count);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Common time base for all stored timestamps.
+ * Location and sensor event times are measured on monotonic elapsed realtime clock
+ * and mapped to UTC epoch with offset captured once, so they stay ordered
+ * and comparable regardless of wall clock drift or jumps.
+ * Offset is captured again only when wall clock is explicitly set.
+ */
+
+class SampleClock extends BroadcastReceiver {
+
+    private static final String TAG = SampleClock.class.getSimpleName();
+
+    // sensor timestamps differing from elapsed realtime by more are assumed to use other time base
+    private static final long SENSOR_BASE_TOLERANCE_NANOS = 1000000000L;
+
+    private volatile long offsetMillis;
+    private volatile boolean hasSensorOffset = false;
+    private volatile long sensorOffsetNanos = 0;
+    private boolean isRegistered = false;
+
+    /**
+     * Constructor
+     */
+    SampleClock() {
+        sync();
+    }
+
+    /**
+     * Start receiving wall clock changes
+     *
+     * @param context Context
+     * @param handler Handler for receiver callbacks
+     */
+    void register(Context context, Handler handler) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+        context.registerReceiver(this, filter, null, handler);
+        isRegistered = true;
+    }
+
+    /**
+     * Stop receiving wall clock changes, if registered
+     *
+     * @param context Context
+     */
+    void unregister(Context context) {
+        if (isRegistered) {
+            context.unregisterReceiver(this);
+            isRegistered = false;
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent != null && Intent.ACTION_TIME_CHANGED.equals(intent.getAction())) {
+            final long previous = offsetMillis;
+            sync();
+            if (Logger.DEBUG) { Log.d(TAG, "[wall clock set, offset changed by " + (offsetMillis - previous) + " ms]"); }
+        }
+    }
+
+    /**
+     * Capture offset between wall clock and elapsed realtime
+     */
+    private void sync() {
+        offsetMillis = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        hasSensorOffset = false;
+    }
+
+    /**
+     * Map elapsed realtime to epoch time
+     * @param realtimeNanos Elapsed realtime (nanoseconds), eg. from Location.getElapsedRealtimeNanos()
+     * @return UTC time (milliseconds)
+     */
+    long realtimeToEpochMillis(long realtimeNanos) {
+        return realtimeNanos / 1000000 + offsetMillis;
+    }
+
+    /**
+     * Map sensor event timestamp to epoch time.
+     * Time base of sensor timestamps is detected on first call after sync,
+     * devices not using elapsed realtime base are corrected with measured offset.
+     * @param timestamp Sensor event timestamp (nanoseconds)
+     * @return UTC time (milliseconds)
+     */
+    long sensorToEpochMillis(long timestamp) {
+        if (!hasSensorOffset) {
+            final long diff = SystemClock.elapsedRealtimeNanos() - timestamp;
+            sensorOffsetNanos = (Math.abs(diff) < SENSOR_BASE_TOLERANCE_NANOS) ? 0 : diff;
+            hasSensorOffset = true;
+        }
+        return realtimeToEpochMillis(timestamp + sensorOffsetNanos);
+    }
+
+    /**
+     * Get current epoch time
+     * @return UTC time (milliseconds)
+     */
+    long now() {
+        return realtimeToEpochMillis(SystemClock.elapsedRealtimeNanos());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Storage of sensor sample batches and compression statistics, implemented by {@link DbAccess}
+ */
+
+interface SampleStore {
+
+    /**
+     * Execute write task and wait until it is committed
+     * @param task Task calling write methods
+     * @return True if committed
+     */
+    boolean write(Runnable task);
+
+    /**
+     * Write batch of sensor samples, called from write task
+     * @param channel Sensor channel
+     * @param times Sample times (UTC milliseconds)
+     * @param values Sample values, channel values count per sample
+     * @param count Number of samples
+     */
+    void writeSamples(SensorChannel channel, long[] times, float[] values, int count);
+
+    /**
+     * Add sample compression statistics to current track, waits until committed
+     * @param samples Number of samples offered to compressor since last update
+     * @param storedSamples Number of samples stored since last update
+     */
+    void updateTrackCompression(long samples, long storedSamples);
+}
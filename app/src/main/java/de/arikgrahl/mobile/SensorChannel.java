@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.hardware.Sensor;
+
+/**
+ * Sensor channels captured by logger service.
+ * Each channel has its own sampling rate preference,
+ * storage table and upload action.
+ */
+
+enum SensorChannel {
+
+    ACCELEROMETER(Sensor.TYPE_ACCELEROMETER,
+            SettingsActivity.KEY_ACCELEROMETER_FREQUENCY,
+            DbContract.Samples.TABLE_ACCELERATIONS,
+            "addacc", "accelerations", 3),
+    LINEAR_ACCELERATION(Sensor.TYPE_LINEAR_ACCELERATION,
+            SettingsActivity.KEY_LINEAR_ACCELERATION_FREQUENCY,
+            DbContract.Samples.TABLE_LINEAR_ACCELERATIONS,
+            "addlinacc", "linear_accelerations", 3),
+    GYROSCOPE(Sensor.TYPE_GYROSCOPE,
+            SettingsActivity.KEY_GYROSCOPE_FREQUENCY,
+            DbContract.Samples.TABLE_ROTATIONS,
+            "addgyro", "rotations", 3),
+    MAGNETOMETER(Sensor.TYPE_MAGNETIC_FIELD,
+            SettingsActivity.KEY_MAGNETOMETER_FREQUENCY,
+            DbContract.Samples.TABLE_MAGNETIC_FIELDS,
+            "addmag", "magnetic_fields", 3),
+    BAROMETER(Sensor.TYPE_PRESSURE,
+            SettingsActivity.KEY_BAROMETER_FREQUENCY,
+            DbContract.Samples.TABLE_PRESSURES,
+            "addpressure", "pressures", 1);
+
+    private final int sensorType;
+    private final String frequencyKey;
+    private final String tableName;
+    private final String webAction;
+    private final String webParam;
+    private final int valuesCount;
+
+    /**
+     * Constructor
+     * @param sensorType Android sensor type
+     * @param frequencyKey Sampling frequency preference key
+     * @param tableName Database table name
+     * @param webAction Server action for uploading samples
+     * @param webParam Server parameter carrying samples
+     * @param valuesCount Number of stored values per sample (1 to 3)
+     */
+    SensorChannel(int sensorType, String frequencyKey, String tableName,
+                  String webAction, String webParam, int valuesCount) {
+        this.sensorType = sensorType;
+        this.frequencyKey = frequencyKey;
+        this.tableName = tableName;
+        this.webAction = webAction;
+        this.webParam = webParam;
+        this.valuesCount = valuesCount;
+    }
+
+    /**
+     * Get android sensor type
+     * @return Sensor type
+     */
+    int getSensorType() {
+        return sensorType;
+    }
+
+    /**
+     * Get sampling frequency preference key
+     * @return Preference key
+     */
+    String getFrequencyKey() {
+        return frequencyKey;
+    }
+
+    /**
+     * Get samples table name
+     * @return Table name
+     */
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Get server upload action
+     * @return Action name
+     */
+    String getWebAction() {
+        return webAction;
+    }
+
+    /**
+     * Get server parameter name for samples
+     * @return Parameter name
+     */
+    String getWebParam() {
+        return webParam;
+    }
+
+    /**
+     * Get number of values per sample
+     * @return Values count
+     */
+    int getValuesCount() {
+        return valuesCount;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+/**
+ * Sensor listener decimating events of one channel
+ * to configured frequency and passing them to sample buffer.
+ * Optionally samples are compressed with swinging door before buffering.
+ */
+
+class SensorSampler implements SensorEventListener {
+
+    private final SensorChannel channel;
+    private final long periodNanos;
+    private final SampleBuffer buffer;
+    private final SampleStore store;
+    private final SampleClock clock;
+    private final SwingingDoor compressor;
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    private final LiveStream stream = LiveStream.getInstance();
+    private long lastTimestamp = 0;
+
+    /**
+     * Constructor
+     * @param channel Sensor channel
+     * @param frequency Sampling frequency in Hz, must be positive
+     * @param deviation Compression deviation, 0 disables compression
+     * @param clock Clock mapping sensor timestamps
+     * @param store Sample storage, eg. database access
+     */
+    SensorSampler(SensorChannel channel, long frequency, float deviation, SampleClock clock, SampleStore store) {
+        this.channel = channel;
+        this.clock = clock;
+        this.store = store;
+        periodNanos = 1000000000L / frequency;
+        buffer = new SampleBuffer(channel, store);
+        compressor = (deviation > 0) ? new SwingingDoor(channel.getValuesCount(), deviation) : null;
+    }
+
+    /**
+     * Get sampling period requested from sensor manager
+     * @return Period in microseconds
+     */
+    int getSamplingPeriodUs() {
+        return (int) (periodNanos / 1000);
+    }
+
+    /**
+     * Write all buffered samples and compression statistics
+     */
+    void flush() {
+        if (compressor != null && compressor.flush()) {
+            buffer.add(compressor.getTime(), compressor.getValues());
+        }
+        buffer.flush();
+        updateCompression();
+    }
+
+    /**
+     * Add compression statistics since last update to track
+     */
+    private void updateCompression() {
+        if (compressor != null) {
+            store.updateTrackCompression(compressor.takeReceivedCount(), compressor.takeStoredCount());
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        metrics.onEvent(channel);
+        if (event.timestamp - lastTimestamp < periodNanos) {
+            metrics.onDecimated(channel);
+            return;
+        }
+        lastTimestamp = event.timestamp;
+        stream.onSample(channel, event.values);
+        final long time = clock.sensorToEpochMillis(event.timestamp);
+        if (compressor == null) {
+            buffer.add(time, event.values);
+        } else if (compressor.offer(event.timestamp, time, event.values)
+                && buffer.add(compressor.getTime(), compressor.getValues())) {
+            updateCompression();
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+    }
+}
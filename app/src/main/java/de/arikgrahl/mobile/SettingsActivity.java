@@ -21,6 +21,26 @@ import androidx.appcompat.app.AppCompatActivity;
 public class SettingsActivity extends AppCompatActivity {
 
     public static final String KEY_ACCELEROMETER_FREQUENCY = "prefAccelerometerFrequency";
+    public static final String KEY_LINEAR_ACCELERATION_FREQUENCY = "prefLinearAccelerationFrequency";
+    public static final String KEY_GYROSCOPE_FREQUENCY = "prefGyroscopeFrequency";
+    public static final String KEY_MAGNETOMETER_FREQUENCY = "prefMagnetometerFrequency";
+    public static final String KEY_BAROMETER_FREQUENCY = "prefBarometerFrequency";
+    public static final String KEY_POSITION_FILTER = "prefPositionFilter";
+    public static final String KEY_SIMPLIFY_TOLERANCE = "prefSimplifyTolerance";
+    public static final String KEY_BEST_FIX = "prefBestFix";
+    public static final String KEY_ADAPTIVE_MAX_TIME = "prefAdaptiveMaxTime";
+    public static final String KEY_DEAD_RECKONING = "prefDeadReckoning";
+    public static final String KEY_ZONES = "prefZones";
+    public static final String KEY_BATCH_LATENCY = "prefBatchLatency";
+    public static final String KEY_BATTERY_PROFILES = "prefBatteryProfiles";
+    public static final String KEY_STAY_RADIUS = "prefStayRadius";
+    public static final String KEY_STAY_DWELL = "prefStayDwell";
+    public static final String KEY_SEGMENT_GAP = "prefSegmentGap";
+    public static final String KEY_TRIGGERED_CAPTURE = "prefTriggeredCapture";
+    public static final String KEY_CAPTURE_MAGNITUDE = "prefCaptureMagnitude";
+    public static final String KEY_CAPTURE_JERK = "prefCaptureJerk";
+    public static final String KEY_SPECTRUM_SIZE = "prefSpectrumSize";
+    public static final String KEY_ACCELEROMETER_DEADBAND = "prefAccelerometerDeadband";
     public static final String KEY_AUTO_START = "prefAutoStart";
     public static final String KEY_HOST = "prefHost";
     public static final String KEY_LIVE_SYNC = "prefLiveSync";
@@ -36,6 +56,7 @@ public class SettingsActivity extends AppCompatActivity {
     public static final String KEY_LOGGER_RUNNING = "prefLoggerRunning";
     public static final String KEY_ALLOW_EXTERNAL = "prefAllowExternal";
     public static final String KEY_AUTO_NAME = "prefAutoName";
+    public static final String KEY_ISOLATED_PROCESS = "prefIsolatedProcess";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -22,6 +22,8 @@ import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.PreferenceManager;
 import androidx.preference.TwoStatePreference;
 
+import java.util.List;
+
 import static de.arikgrahl.mobile.SettingsActivity.*;
 
 @SuppressWarnings("WeakerAccess")
@@ -32,6 +34,7 @@ public class SettingsFragment extends PreferenceFragmentCompat {
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
         setPreferencesFromResource(R.xml.preferences, rootKey);
         setListeners();
+        loadZones();
     }
 
     @Override
@@ -73,6 +76,7 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         final Preference prefUsername = findPreference(KEY_USERNAME);
         final Preference prefPass = findPreference(KEY_PASS);
         final Preference prefHost = findPreference(KEY_HOST);
+        final Preference prefZones = findPreference(KEY_ZONES);
         // on change listeners
         if (prefLiveSync != null) {
             prefLiveSync.setOnPreferenceChangeListener(liveSyncChanged);
@@ -86,6 +90,9 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         if (prefHost != null) {
             prefHost.setOnPreferenceChangeListener(serverSetupChanged);
         }
+        if (prefZones != null) {
+            prefZones.setOnPreferenceChangeListener(zonesChanged);
+        }
         // on click listeners
         if (prefUsername != null) {
             prefUsername.setOnPreferenceClickListener(serverSetupClicked);
@@ -122,6 +129,39 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         return true;
     };
 
+    /**
+     * On change listener to validate zones and store them in database
+     */
+    private final Preference.OnPreferenceChangeListener zonesChanged = (preference, newValue) -> {
+        final Context context = preference.getContext();
+        final List<Zone> zones;
+        try {
+            zones = ZoneSet.parse(newValue.toString());
+        } catch (IllegalArgumentException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[" + e.getMessage() + "]"); }
+            Toast.makeText(context, R.string.invalid_zones_warning, Toast.LENGTH_LONG).show();
+            return false;
+        }
+        DbAccess db = DbAccess.getInstance();
+        db.open(context);
+        db.setZones(zones);
+        db.close();
+        return true;
+    };
+
+    /**
+     * Show zones stored in database in zones preference
+     */
+    private void loadZones() {
+        final Preference prefZones = findPreference(KEY_ZONES);
+        if (prefZones instanceof EditTextPreference) {
+            DbAccess db = DbAccess.getInstance();
+            db.open(prefZones.getContext());
+            ((EditTextPreference) prefZones).setText(ZoneSet.format(db.getZones()));
+            db.close();
+        }
+    }
+
     /**
      * On click listener to warn if server setup has changed
      */
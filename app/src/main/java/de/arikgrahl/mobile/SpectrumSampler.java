@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.util.Log;
+
+/**
+ * Accelerometer listener collecting fixed size windows of acceleration magnitude.
+ * Vibration spectrum of each full window is stored instead of raw samples.
+ * Windows do not overlap, window interrupted by delivery gap is discarded.
+ */
+
+class SpectrumSampler implements SensorEventListener {
+
+    private static final String TAG = SpectrumSampler.class.getSimpleName();
+
+    private static final int SAMPLING_PERIOD_US = 10000;
+    // gap in sensor events restarting window
+    private static final long MAX_GAP_NANOS = 10 * SAMPLING_PERIOD_US * 1000L;
+
+    private final DbAccess db;
+    private final SampleClock clock;
+    private final VibrationSpectrum spectrum;
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    private final float[] samples;
+    private int count = 0;
+    private long firstTimestamp = 0;
+    private long lastTimestamp = 0;
+    private long windowsCount = 0;
+
+    /**
+     * Constructor
+     * @param size Window size, power of two
+     * @param clock Clock mapping sensor timestamps
+     * @param db Database access
+     */
+    SpectrumSampler(int size, SampleClock clock, DbAccess db) {
+        this.clock = clock;
+        this.db = db;
+        spectrum = new VibrationSpectrum(size);
+        samples = new float[size];
+    }
+
+    /**
+     * Get sampling period requested from sensor manager
+     * @return Period in microseconds
+     */
+    int getSamplingPeriodUs() {
+        return SAMPLING_PERIOD_US;
+    }
+
+    /**
+     * Get number of stored spectra
+     * @return Count
+     */
+    long getWindowsCount() {
+        return windowsCount;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        metrics.onEvent(SensorChannel.ACCELEROMETER);
+        if (count > 0 && event.timestamp - lastTimestamp > MAX_GAP_NANOS) {
+            count = 0;
+        }
+        if (count == 0) {
+            firstTimestamp = event.timestamp;
+        }
+        lastTimestamp = event.timestamp;
+        final float x = event.values[0];
+        final float y = event.values[1];
+        final float z = event.values[2];
+        samples[count++] = (float) Math.sqrt(x * x + y * y + z * z);
+        if (count == samples.length) {
+            spectrum.compute(samples, lastTimestamp - firstTimestamp);
+            db.writeSpectrum(clock.sensorToEpochMillis(lastTimestamp), spectrum.getRate(),
+                    spectrum.getDominant(), spectrum.getEnergies());
+            windowsCount++;
+            metrics.onSpectrum();
+            count = 0;
+            if (Logger.DEBUG) { Log.d(TAG, "[spectrum stored: " + spectrum.getDominant() + " Hz]"); }
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Online stay point detection over stored positions.
+ * Positions within radius from first position of cluster form candidate stay.
+ * When position leaves radius and cluster lasted at least dwell time,
+ * stay is reported with centroid, arrival, departure and positions count.
+ */
+
+class StayPointDetector {
+
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    // minimum positions in stay
+    private static final int MIN_COUNT = 2;
+
+    private final double radius;
+    private final long dwellSeconds;
+
+    private boolean hasCluster = false;
+    private double anchorLat;
+    private double anchorLon;
+    private double metersPerDegreeLon;
+    private double sumLat;
+    private double sumLon;
+    private int count;
+    private long arrival;
+    private long departure;
+
+    // last detected stay
+    private double stayLat;
+    private double stayLon;
+    private long stayArrival;
+    private long stayDeparture;
+    private int stayCount;
+
+    /**
+     * Constructor
+     * @param radius Stay radius (meters)
+     * @param dwellSeconds Minimum stay duration (seconds)
+     */
+    StayPointDetector(double radius, long dwellSeconds) {
+        this.radius = radius;
+        this.dwellSeconds = dwellSeconds;
+    }
+
+    /**
+     * Offer stored position
+     * @param lat Latitude
+     * @param lon Longitude
+     * @param time Time (seconds)
+     * @return True if stay was finished, its data is available from getters
+     */
+    boolean offer(double lat, double lon, long time) {
+        if (hasCluster) {
+            final double dx = (lon - anchorLon) * metersPerDegreeLon;
+            final double dy = (lat - anchorLat) * METERS_PER_DEGREE;
+            if (dx * dx + dy * dy <= radius * radius) {
+                sumLat += lat;
+                sumLon += lon;
+                count++;
+                departure = time;
+                return false;
+            }
+        }
+        final boolean isStay = finishCluster();
+        startCluster(lat, lon, time);
+        return isStay;
+    }
+
+    /**
+     * Finish current cluster, eg. when logging stops
+     * @return True if cluster was a stay, its data is available from getters
+     */
+    boolean flush() {
+        final boolean isStay = finishCluster();
+        hasCluster = false;
+        return isStay;
+    }
+
+    /**
+     * Check whether current cluster is a stay and save it
+     * @return True if stay
+     */
+    private boolean finishCluster() {
+        if (!hasCluster || count < MIN_COUNT || departure - arrival < dwellSeconds) {
+            return false;
+        }
+        stayLat = sumLat / count;
+        stayLon = sumLon / count;
+        stayArrival = arrival;
+        stayDeparture = departure;
+        stayCount = count;
+        return true;
+    }
+
+    /**
+     * Start new cluster
+     * @param lat Latitude
+     * @param lon Longitude
+     * @param time Time (seconds)
+     */
+    private void startCluster(double lat, double lon, long time) {
+        anchorLat = lat;
+        anchorLon = lon;
+        metersPerDegreeLon = Math.max(METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)), 1);
+        sumLat = lat;
+        sumLon = lon;
+        count = 1;
+        arrival = time;
+        departure = time;
+        hasCluster = true;
+    }
+
+    /**
+     * Get latitude of stay centroid
+     * @return Latitude
+     */
+    double getLatitude() {
+        return stayLat;
+    }
+
+    /**
+     * Get longitude of stay centroid
+     * @return Longitude
+     */
+    double getLongitude() {
+        return stayLon;
+    }
+
+    /**
+     * Get stay arrival time
+     * @return Time (seconds)
+     */
+    long getArrival() {
+        return stayArrival;
+    }
+
+    /**
+     * Get stay departure time
+     * @return Time (seconds)
+     */
+    long getDeparture() {
+        return stayDeparture;
+    }
+
+    /**
+     * Get number of positions in stay
+     * @return Count
+     */
+    int getCount() {
+        return stayCount;
+    }
+}
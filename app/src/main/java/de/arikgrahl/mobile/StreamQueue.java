@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded queue of messages for one live stream client with send budget.
+ * Client may have at most window messages sent and not acknowledged.
+ * While it is over budget messages stay queued, and oldest ones are dropped
+ * when queue is full, so client receives newest data once it catches up.
+ * Budget is restored by client acknowledgements, clients that do not
+ * acknowledge are restored full window once per credit period.
+ * Not thread safe.
+ *
+ * @param <T> Message type
+ */
+
+class StreamQueue<T> {
+
+    private final ArrayDeque<T> queue;
+    private final int capacity;
+    private final int window;
+    private final long creditPeriodNanos;
+    private int inFlight = 0;
+    private long creditNanos;
+    private long droppedCount = 0;
+
+    /**
+     * Constructor
+     * @param capacity Maximum queued messages
+     * @param window Maximum sent messages not acknowledged
+     * @param creditPeriodNanos Period of budget restore without acknowledgements (nanoseconds)
+     * @param nowNanos Current time (nanoseconds)
+     */
+    StreamQueue(int capacity, int window, long creditPeriodNanos, long nowNanos) {
+        this.capacity = capacity;
+        this.window = window;
+        this.creditPeriodNanos = creditPeriodNanos;
+        creditNanos = nowNanos;
+        queue = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Add message, drop oldest one if queue is full
+     * @param msg Message
+     * @return Dropped message, to be released by caller, or null
+     */
+    @Nullable
+    T offer(T msg) {
+        T dropped = null;
+        if (queue.size() == capacity) {
+            dropped = queue.poll();
+            droppedCount++;
+        }
+        queue.add(msg);
+        return dropped;
+    }
+
+    /**
+     * Take next message to send, if client is within budget
+     * @param nowNanos Current time (nanoseconds)
+     * @return Message or null if queue is empty or client is over budget
+     */
+    @Nullable
+    T poll(long nowNanos) {
+        if (queue.isEmpty()) {
+            return null;
+        }
+        if (nowNanos - creditNanos >= creditPeriodNanos) {
+            inFlight = 0;
+            creditNanos = nowNanos;
+        }
+        if (inFlight >= window) {
+            return null;
+        }
+        inFlight++;
+        return queue.poll();
+    }
+
+    /**
+     * Take queued message regardless of budget, eg. to release it
+     * @return Message or null if empty
+     */
+    @Nullable
+    T remove() {
+        return queue.poll();
+    }
+
+    /**
+     * Restore budget of messages processed by client
+     * @param count Number of processed messages
+     */
+    void ack(int count) {
+        inFlight = Math.max(0, inFlight - Math.max(0, count));
+    }
+
+    /**
+     * Get number of queued messages
+     * @return Count
+     */
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Get number of messages dropped because client did not keep up
+     * @return Count
+     */
+    long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bound entry point of live stream for other applications.
+ * Requires stream permission and external commands enabled in settings,
+ * clients are dropped when external commands are disabled.
+ * Binding does not start logger: client registrations are forwarded
+ * to live stream of logger service whenever it is running, in any process.
+ * See {@link LiveStream} for protocol.
+ */
+
+public class StreamService extends Service {
+
+    private static final String TAG = StreamService.class.getSimpleName();
+
+    static final String ACTION_STREAM = BuildConfig.APPLICATION_ID + ".intent.action.STREAM";
+    static final String ACTION_STREAM_INTERNAL = BuildConfig.APPLICATION_ID + ".intent.action.STREAM_INTERNAL";
+
+    // registered client messages, replayed to logger after it (re)starts
+    private final List<Message> registrations = new ArrayList<>();
+    private final List<LoggerConnection> connections = new ArrayList<>();
+    private Messenger logger = null;
+    private SharedPreferences prefs;
+
+    private final Messenger messenger = new Messenger(new Handler(Looper.getMainLooper(), this::handleMessage));
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        prefs.registerOnSharedPreferenceChangeListener(prefListener);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        if (!ACTION_STREAM.equals(intent.getAction()) || !isAllowed()) {
+            if (Logger.DEBUG) { Log.d(TAG, "[stream binding refused]"); }
+            return null;
+        }
+        if (connections.isEmpty()) {
+            // without auto create, logger is connected only while running
+            bindLogger(LoggerService.class);
+            bindLogger(IsolatedLoggerService.class);
+        }
+        return messenger.getBinder();
+    }
+
+    @Override
+    public void onDestroy() {
+        prefs.unregisterOnSharedPreferenceChangeListener(prefListener);
+        dropClients();
+        for (LoggerConnection connection : connections) {
+            unbindService(connection);
+        }
+        connections.clear();
+        logger = null;
+        super.onDestroy();
+    }
+
+    /**
+     * Check if external applications are allowed in settings
+     * @return True if allowed
+     */
+    private boolean isAllowed() {
+        return prefs.getBoolean(SettingsActivity.KEY_ALLOW_EXTERNAL, false);
+    }
+
+    /**
+     * Unregister all clients from logger live stream
+     */
+    private void dropClients() {
+        for (Message registration : registrations) {
+            registration.what = LiveStream.MSG_UNREGISTER;
+            forward(registration);
+            registration.recycle();
+        }
+        registrations.clear();
+    }
+
+    /**
+     * Drop clients when external applications are disabled
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefListener = (sharedPreferences, key) -> {
+        if (SettingsActivity.KEY_ALLOW_EXTERNAL.equals(key) && !isAllowed() && !registrations.isEmpty()) {
+            if (Logger.DEBUG) { Log.d(TAG, "[external disabled, dropping " + registrations.size() + " clients]"); }
+            dropClients();
+        }
+    };
+
+    /**
+     * Bind logger service without creating it
+     * @param service Logger service class
+     */
+    private void bindLogger(Class<? extends LoggerService> service) {
+        final LoggerConnection connection = new LoggerConnection();
+        final Intent intent = new Intent(this, service).setAction(ACTION_STREAM_INTERNAL);
+        if (bindService(intent, connection, 0)) {
+            connections.add(connection);
+        }
+    }
+
+    /**
+     * Handle client requests on main thread
+     * @param msg Message
+     * @return True if handled
+     */
+    private boolean handleMessage(Message msg) {
+        if (msg.replyTo == null) {
+            return false;
+        }
+        switch (msg.what) {
+            case LiveStream.MSG_REGISTER:
+                if (!isAllowed()) {
+                    if (Logger.DEBUG) { Log.d(TAG, "[stream registration refused]"); }
+                    return true;
+                }
+                removeRegistration(msg.replyTo);
+                registrations.add(Message.obtain(msg));
+                forward(msg);
+                return true;
+            case LiveStream.MSG_UNREGISTER:
+                removeRegistration(msg.replyTo);
+                forward(msg);
+                return true;
+            case LiveStream.MSG_ACK:
+                forward(msg);
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove stored registration of client
+     * @param client Client messenger
+     */
+    private void removeRegistration(Messenger client) {
+        for (int i = registrations.size() - 1; i >= 0; i--) {
+            if (client.equals(registrations.get(i).replyTo)) {
+                registrations.remove(i).recycle();
+            }
+        }
+    }
+
+    /**
+     * Forward client request to logger live stream, if logger is running
+     * @param msg Message
+     */
+    private void forward(Message msg) {
+        if (logger == null) {
+            return;
+        }
+        try {
+            logger.send(Message.obtain(msg));
+        } catch (RemoteException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[logger lost: " + e + "]"); }
+            logger = null;
+        }
+    }
+
+    /**
+     * Connection to logger service live stream
+     */
+    private class LoggerConnection implements ServiceConnection {
+        private Messenger connected = null;
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            if (Logger.DEBUG) { Log.d(TAG, "[logger connected: " + name.getShortClassName() + "]"); }
+            connected = new Messenger(service);
+            logger = connected;
+            for (Message registration : registrations) {
+                forward(registration);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            if (Logger.DEBUG) { Log.d(TAG, "[logger disconnected: " + name.getShortClassName() + "]"); }
+            if (logger == connected) {
+                logger = null;
+            }
+            connected = null;
+        }
+    }
+}
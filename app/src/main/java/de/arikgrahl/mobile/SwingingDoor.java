@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Swinging door compression of multi-value sensor samples.
+ * Sample is stored only when samples received since last stored one
+ * can no longer be represented by straight line from it within deviation,
+ * for any of the values. Linear interpolation between stored samples
+ * reconstructs every dropped sample within deviation (see {@link #reconstruct}).
+ */
+
+class SwingingDoor {
+
+    private final int valuesCount;
+    // doors are opened at half of deviation: line from last stored to next stored sample
+    // may differ from any line fitting within doors by another half at most
+    private final float halfDeviation;
+
+    private boolean hasArchived = false;
+    private long archivedTimestamp;
+    private final float[] archivedValues;
+    // steepest upper and least steep lower door slopes (value per second)
+    private final double[] upper;
+    private final double[] lower;
+
+    private boolean hasHeld = false;
+    private long heldTimestamp;
+    private long heldTime;
+    private final float[] heldValues;
+
+    private long outTime;
+    private final float[] outValues;
+
+    private long receivedCount = 0;
+    private long storedCount = 0;
+
+    /**
+     * Constructor
+     * @param valuesCount Number of values per sample
+     * @param deviation Maximum deviation of reconstructed values
+     */
+    SwingingDoor(int valuesCount, float deviation) {
+        this.valuesCount = valuesCount;
+        halfDeviation = deviation / 2;
+        archivedValues = new float[valuesCount];
+        upper = new double[valuesCount];
+        lower = new double[valuesCount];
+        heldValues = new float[valuesCount];
+        outValues = new float[valuesCount];
+    }
+
+    /**
+     * Offer sample
+     * @param timestamp Sensor timestamp (nanoseconds)
+     * @param time Sample time (milliseconds)
+     * @param values Values, at least values count
+     * @return True if sample should be stored, it is available from getters
+     */
+    boolean offer(long timestamp, long time, float[] values) {
+        receivedCount++;
+        if (!hasArchived) {
+            archive(timestamp, time, values);
+            return true;
+        }
+        if (timestamp <= archivedTimestamp) {
+            hold(timestamp, time, values);
+            return false;
+        }
+        if (!openDoors(timestamp, values)) {
+            hold(timestamp, time, values);
+            return false;
+        }
+        // doors closed: held sample is the last one representable from archived sample
+        archive(heldTimestamp, heldTime, heldValues);
+        openDoors(timestamp, values);
+        hold(timestamp, time, values);
+        return true;
+    }
+
+    /**
+     * Finish series, eg. when sampling stops.
+     * Next offered sample starts new series.
+     * @return True if last received sample should be stored, it is available from getters
+     */
+    boolean flush() {
+        final boolean isPending = hasHeld;
+        if (isPending) {
+            archive(heldTimestamp, heldTime, heldValues);
+        }
+        hasArchived = false;
+        return isPending;
+    }
+
+    /**
+     * Widen doors to include sample
+     * @param timestamp Sensor timestamp (nanoseconds)
+     * @param values Values
+     * @return True if doors closed, ie. sample can not be represented
+     */
+    private boolean openDoors(long timestamp, float[] values) {
+        final double dt = (timestamp - archivedTimestamp) / 1e9;
+        boolean isClosed = false;
+        for (int i = 0; i < valuesCount; i++) {
+            upper[i] = Math.max(upper[i], (values[i] - archivedValues[i] - halfDeviation) / dt);
+            lower[i] = Math.min(lower[i], (values[i] - archivedValues[i] + halfDeviation) / dt);
+            if (upper[i] > lower[i]) {
+                isClosed = true;
+            }
+        }
+        return isClosed;
+    }
+
+    /**
+     * Make sample new door pivot and output sample
+     * @param timestamp Sensor timestamp (nanoseconds)
+     * @param time Sample time
+     * @param values Values
+     */
+    private void archive(long timestamp, long time, float[] values) {
+        archivedTimestamp = timestamp;
+        System.arraycopy(values, 0, archivedValues, 0, valuesCount);
+        for (int i = 0; i < valuesCount; i++) {
+            upper[i] = Double.NEGATIVE_INFINITY;
+            lower[i] = Double.POSITIVE_INFINITY;
+        }
+        outTime = time;
+        System.arraycopy(values, 0, outValues, 0, valuesCount);
+        hasArchived = true;
+        hasHeld = false;
+        storedCount++;
+    }
+
+    /**
+     * Keep last received sample not yet stored
+     * @param timestamp Sensor timestamp (nanoseconds)
+     * @param time Sample time
+     * @param values Values
+     */
+    private void hold(long timestamp, long time, float[] values) {
+        heldTimestamp = timestamp;
+        heldTime = time;
+        System.arraycopy(values, 0, heldValues, 0, valuesCount);
+        hasHeld = true;
+    }
+
+    /**
+     * Get time of sample to store
+     * @return Time
+     */
+    long getTime() {
+        return outTime;
+    }
+
+    /**
+     * Get values of sample to store.
+     * Array is reused by next offer.
+     * @return Values
+     */
+    float[] getValues() {
+        return outValues;
+    }
+
+    /**
+     * Get number of received samples since last call and reset it
+     * @return Count
+     */
+    long takeReceivedCount() {
+        final long count = receivedCount;
+        receivedCount = 0;
+        return count;
+    }
+
+    /**
+     * Get number of stored samples since last call and reset it
+     * @return Count
+     */
+    long takeStoredCount() {
+        final long count = storedCount;
+        storedCount = 0;
+        return count;
+    }
+
+    /**
+     * Reconstruct sample at given time from stored series, on reader side
+     * @param times Stored sample times, ascending
+     * @param values Stored sample values, values count per sample
+     * @param count Number of stored samples
+     * @param valuesCount Number of values per sample
+     * @param time Time of reconstructed sample
+     * @param out Reconstructed values, at least values count
+     * @return False if time is outside of stored series
+     */
+    static boolean reconstruct(long[] times, float[] values, int count, int valuesCount, long time, float[] out) {
+        if (count == 0 || time < times[0] || time > times[count - 1]) {
+            return false;
+        }
+        // last stored sample not later than time
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (times[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final int next = Math.min(low + 1, count - 1);
+        for (int j = 0; j < valuesCount; j++) {
+            out[j] = interpolate(times[low], values[low * valuesCount + j],
+                    times[next], values[next * valuesCount + j], time);
+        }
+        return true;
+    }
+
+    /**
+     * Reconstruct value between two consecutive stored samples
+     * @param time0 Time of earlier sample
+     * @param value0 Value of earlier sample
+     * @param time1 Time of later sample
+     * @param value1 Value of later sample
+     * @param time Time of reconstructed value
+     * @return Value
+     */
+    static float interpolate(long time0, float value0, long time1, float value1, long time) {
+        if (time1 == time0) {
+            return value1;
+        }
+        return value0 + (value1 - value0) * (time - time0) / (time1 - time0);
+    }
+}
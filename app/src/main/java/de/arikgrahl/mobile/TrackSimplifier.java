@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Streaming track simplifier.
+ * Sliding window variant of Douglas-Peucker algorithm: last offered fix is held back
+ * as long as all fixes since last stored one stay within tolerance
+ * of segment from last stored fix to newest fix.
+ * Decision is delayed by one fix, window size is bounded.
+ */
+
+class TrackSimplifier {
+
+    /** Store current fix immediately */
+    static final int STORE_CURRENT = 0;
+    /** Store previously held fix, hold current one */
+    static final int STORE_PREVIOUS = 1;
+    /** Drop previously held fix (if any), hold current one */
+    static final int HOLD_CURRENT = 2;
+
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    private static final int WINDOW_SIZE = 64;
+
+    private final double tolerance;
+
+    private boolean hasAnchor = false;
+    private double anchorLat;
+    private double anchorLon;
+    private double metersPerDegreeLon;
+
+    private boolean hasHeld = false;
+    private double heldX;
+    private double heldY;
+
+    // skipped fixes since anchor, local coordinates relative to anchor
+    private final double[] windowX = new double[WINDOW_SIZE];
+    private final double[] windowY = new double[WINDOW_SIZE];
+    private int windowCount = 0;
+
+    private double segmentDeviation = 0;
+    private double maxDeviation = 0;
+    private long offeredCount = 0;
+
+    /**
+     * Constructor
+     * @param tolerance Maximum deviation of dropped fixes from track (meters)
+     */
+    TrackSimplifier(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Offer new fix
+     * @param lat Latitude
+     * @param lon Longitude
+     * @return Decision: STORE_CURRENT, STORE_PREVIOUS or HOLD_CURRENT
+     */
+    int offer(double lat, double lon) {
+        offeredCount++;
+        if (!hasAnchor) {
+            setAnchor(lat, lon);
+            return STORE_CURRENT;
+        }
+        final double x = (lon - anchorLon) * metersPerDegreeLon;
+        final double y = (lat - anchorLat) * METERS_PER_DEGREE;
+        if (!hasHeld) {
+            hold(x, y);
+            return HOLD_CURRENT;
+        }
+        if (windowCount < WINDOW_SIZE) {
+            double deviation = distanceToSegment(heldX, heldY, x, y);
+            for (int i = 0; i < windowCount && deviation <= tolerance; i++) {
+                deviation = Math.max(deviation, distanceToSegment(windowX[i], windowY[i], x, y));
+            }
+            if (deviation <= tolerance) {
+                // held fix is redundant
+                windowX[windowCount] = heldX;
+                windowY[windowCount] = heldY;
+                windowCount++;
+                segmentDeviation = deviation;
+                hold(x, y);
+                return HOLD_CURRENT;
+            }
+        }
+        // held fix becomes new anchor
+        final double heldLat = anchorLat + heldY / METERS_PER_DEGREE;
+        final double heldLon = anchorLon + heldX / metersPerDegreeLon;
+        setAnchor(heldLat, heldLon);
+        hold((lon - anchorLon) * metersPerDegreeLon, (lat - anchorLat) * METERS_PER_DEGREE);
+        return STORE_PREVIOUS;
+    }
+
+    /**
+     * Finish current segment, held fix (if any) must be stored.
+     * @return True if there was held fix
+     */
+    boolean flush() {
+        if (!hasHeld) {
+            return false;
+        }
+        final double heldLat = anchorLat + heldY / METERS_PER_DEGREE;
+        final double heldLon = anchorLon + heldX / metersPerDegreeLon;
+        setAnchor(heldLat, heldLon);
+        return true;
+    }
+
+    /**
+     * Get number of offered fixes since last call, reset counter
+     * @return Count
+     */
+    long takeOfferedCount() {
+        final long count = offeredCount;
+        offeredCount = 0;
+        return count;
+    }
+
+    /**
+     * Get maximum deviation of dropped fixes in finished segments
+     * @return Deviation in meters
+     */
+    double getMaxDeviation() {
+        return maxDeviation;
+    }
+
+    /**
+     * Set new anchor, finish segment
+     * @param lat Latitude
+     * @param lon Longitude
+     */
+    private void setAnchor(double lat, double lon) {
+        anchorLat = lat;
+        anchorLon = lon;
+        metersPerDegreeLon = Math.max(METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)), 1);
+        hasAnchor = true;
+        hasHeld = false;
+        windowCount = 0;
+        maxDeviation = Math.max(maxDeviation, segmentDeviation);
+        segmentDeviation = 0;
+    }
+
+    /**
+     * Hold fix
+     * @param x Local x coordinate
+     * @param y Local y coordinate
+     */
+    private void hold(double x, double y) {
+        heldX = x;
+        heldY = y;
+        hasHeld = true;
+    }
+
+    /**
+     * Distance of point from segment starting at anchor (origin)
+     * @param px Point x
+     * @param py Point y
+     * @param ex Segment end x
+     * @param ey Segment end y
+     * @return Distance in meters
+     */
+    private static double distanceToSegment(double px, double py, double ex, double ey) {
+        final double length2 = ex * ex + ey * ey;
+        double t = 0;
+        if (length2 > 0) {
+            t = Math.max(0, Math.min(1, (px * ex + py * ey) / length2));
+        }
+        final double dx = px - t * ex;
+        final double dy = py - t * ey;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -27,17 +27,42 @@ class TrackSummary {
      * Count of track positions
      */
     final private long positionsCount;
+    /**
+     * Count of fixes offered to track simplifier
+     */
+    final private long fixesCount;
+    /**
+     * Maximum deviation of fixes dropped by simplifier in meters
+     */
+    final private double maxDeviation;
+    /**
+     * Count of sensor samples offered to compressor
+     */
+    final private long samplesCount;
+    /**
+     * Count of sensor samples stored by compressor
+     */
+    final private long storedSamplesCount;
 
     /**
      * Constructor
      * @param mDistance Distance (meters)
      * @param mDuration Duration (seconds)
      * @param mPositionsCount Number of positions
+     * @param mFixesCount Number of fixes offered to simplifier
+     * @param mMaxDeviation Maximum deviation of dropped fixes (meters)
+     * @param mSamplesCount Number of sensor samples offered to compressor
+     * @param mStoredSamplesCount Number of sensor samples stored by compressor
      */
-    TrackSummary(long mDistance, long mDuration, long mPositionsCount) {
+    TrackSummary(long mDistance, long mDuration, long mPositionsCount, long mFixesCount, double mMaxDeviation,
+                 long mSamplesCount, long mStoredSamplesCount) {
         distance = mDistance;
         duration = mDuration;
         positionsCount = mPositionsCount;
+        fixesCount = mFixesCount;
+        maxDeviation = mMaxDeviation;
+        samplesCount = mSamplesCount;
+        storedSamplesCount = mStoredSamplesCount;
     }
 
     /**
@@ -61,4 +86,52 @@ class TrackSummary {
     long getPositionsCount() {
         return positionsCount;
     }
+
+    /**
+     * Check if track was simplified
+     * @return True if any fixes passed simplifier
+     */
+    boolean isSimplified() {
+        return fixesCount > 0;
+    }
+
+    /**
+     * Get ratio of retained fixes
+     * @return Ratio (0 to 1)
+     */
+    double getRetainedRatio() {
+        return isSimplified() ? Math.min(1, (double) positionsCount / fixesCount) : 1;
+    }
+
+    /**
+     * Get maximum deviation of dropped fixes
+     * @return Deviation in meters
+     */
+    double getMaxDeviation() {
+        return maxDeviation;
+    }
+
+    /**
+     * Check if sensor samples were compressed
+     * @return True if any samples passed compressor
+     */
+    boolean isCompressed() {
+        return samplesCount > 0 && storedSamplesCount > 0;
+    }
+
+    /**
+     * Get compression ratio of sensor samples
+     * @return Ratio of offered to stored samples (at least 1)
+     */
+    double getCompressionRatio() {
+        return isCompressed() ? Math.max(1, (double) samplesCount / storedSamplesCount) : 1;
+    }
+
+    /**
+     * Get count of sensor samples offered to compressor
+     * @return Count
+     */
+    long getSamplesCount() {
+        return samplesCount;
+    }
 }
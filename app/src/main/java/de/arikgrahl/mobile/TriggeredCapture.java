@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.util.Log;
+
+/**
+ * High rate accelerometer capture around trigger events.
+ * Samples are kept in fixed size ring buffer covering pre-trigger window.
+ * On trigger (magnitude, jerk or external) buffered samples are persisted
+ * together with samples of post-trigger window. Nothing is stored otherwise.
+ */
+
+class TriggeredCapture implements SensorEventListener {
+
+    private static final String TAG = TriggeredCapture.class.getSimpleName();
+
+    private static final int SAMPLING_PERIOD_US = 10000;
+    private static final long PRE_TRIGGER_NANOS = 2000000000L;
+    private static final long POST_TRIGGER_NANOS = 3000000000L;
+    // ring buffer holds pre-trigger window at sampling rate, with margin for faster delivery
+    private static final int CAPACITY = (int) (2 * PRE_TRIGGER_NANOS / (SAMPLING_PERIOD_US * 1000L));
+    private static final int VALUES_COUNT = 3;
+
+    private final SampleBuffer buffer;
+    private final SampleClock clock;
+    private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    private final float magnitudeThreshold;
+    private final float jerkThreshold;
+
+    private final long[] times = new long[CAPACITY];
+    private final long[] timestamps = new long[CAPACITY];
+    private final float[] values = new float[CAPACITY * VALUES_COUNT];
+    private final float[] sample = new float[VALUES_COUNT];
+    private int head = 0;
+    private int size = 0;
+
+    private volatile boolean isTriggerPending = false;
+    private long postTriggerEnd = 0;
+    private float lastMagnitude = SensorManager.GRAVITY_EARTH;
+    private long lastTimestamp = 0;
+
+    /**
+     * Constructor
+     * @param clock Clock mapping sensor timestamps
+     * @param db Database access
+     * @param magnitudeThreshold Trigger on deviation of acceleration magnitude from gravity (m/s^2), 0 disables
+     * @param jerkThreshold Trigger on rate of change of acceleration magnitude (m/s^3), 0 disables
+     */
+    TriggeredCapture(SampleClock clock, DbAccess db, float magnitudeThreshold, float jerkThreshold) {
+        this.clock = clock;
+        buffer = new SampleBuffer(SensorChannel.ACCELEROMETER, db);
+        this.magnitudeThreshold = magnitudeThreshold;
+        this.jerkThreshold = jerkThreshold;
+    }
+
+    /**
+     * Get sampling period requested from sensor manager
+     * @return Period in microseconds
+     */
+    int getSamplingPeriodUs() {
+        return SAMPLING_PERIOD_US;
+    }
+
+    /**
+     * Request capture on next sample, may be called from any thread
+     */
+    void trigger() {
+        isTriggerPending = true;
+    }
+
+    /**
+     * Write pending captured samples
+     */
+    void flush() {
+        buffer.flush();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        metrics.onEvent(SensorChannel.ACCELEROMETER);
+        final long time = clock.sensorToEpochMillis(event.timestamp);
+        final float x = event.values[0];
+        final float y = event.values[1];
+        final float z = event.values[2];
+        final float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+
+        boolean isTriggered = isTriggerPending;
+        if (magnitudeThreshold > 0 && Math.abs(magnitude - SensorManager.GRAVITY_EARTH) > magnitudeThreshold) {
+            isTriggered = true;
+        }
+        if (jerkThreshold > 0 && lastTimestamp > 0 && event.timestamp > lastTimestamp) {
+            final float jerk = Math.abs(magnitude - lastMagnitude) * 1e9f / (event.timestamp - lastTimestamp);
+            if (jerk > jerkThreshold) {
+                isTriggered = true;
+            }
+        }
+        lastMagnitude = magnitude;
+        lastTimestamp = event.timestamp;
+
+        if (isTriggered) {
+            isTriggerPending = false;
+            if (event.timestamp >= postTriggerEnd) {
+                metrics.onCapture();
+                if (Logger.DEBUG) { Log.d(TAG, "[capture triggered]"); }
+                drainPreTrigger(event.timestamp);
+            }
+            // trigger during capture extends it
+            postTriggerEnd = event.timestamp + POST_TRIGGER_NANOS;
+        }
+
+        if (event.timestamp < postTriggerEnd) {
+            buffer.add(time, event.values);
+        } else {
+            push(time, event.timestamp, event.values);
+        }
+    }
+
+    /**
+     * Add sample to ring buffer, overwriting the oldest one when full
+     * @param time Sample time (milliseconds)
+     * @param timestamp Sensor timestamp (nanoseconds)
+     * @param eventValues Values
+     */
+    private void push(long time, long timestamp, float[] eventValues) {
+        times[head] = time;
+        timestamps[head] = timestamp;
+        System.arraycopy(eventValues, 0, values, head * VALUES_COUNT, VALUES_COUNT);
+        head = (head + 1) % CAPACITY;
+        size = Math.min(size + 1, CAPACITY);
+    }
+
+    /**
+     * Persist ring buffer samples within pre-trigger window, oldest first, and empty it
+     * @param timestamp Trigger sensor timestamp (nanoseconds)
+     */
+    private void drainPreTrigger(long timestamp) {
+        int index = (head - size + CAPACITY) % CAPACITY;
+        for (int i = 0; i < size; i++) {
+            if (timestamp - timestamps[index] <= PRE_TRIGGER_NANOS) {
+                System.arraycopy(values, index * VALUES_COUNT, sample, 0, VALUES_COUNT);
+                buffer.add(times[index], sample);
+            }
+            index = (index + 1) % CAPACITY;
+        }
+        size = 0;
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+    }
+}
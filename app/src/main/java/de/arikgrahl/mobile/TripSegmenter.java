@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.location.Location;
+
+/**
+ * Incremental track segmentation at write time.
+ * New segment starts after time gap longer than threshold or after detected stop.
+ * Distance from previous stored position in the same segment is computed
+ * for each position, so segment statistics may be updated without rescanning.
+ */
+
+class TripSegmenter {
+
+    private final long gapSeconds;
+
+    private int segment = 0;
+    private boolean hasLast = false;
+    private boolean breakPending = false;
+    private double lastLat;
+    private double lastLon;
+    private long lastTime;
+    private float distance;
+    private final float[] results = new float[1];
+
+    /**
+     * Constructor
+     * @param gapSeconds Gap starting new segment (seconds), 0 for no gap segmentation
+     */
+    TripSegmenter(long gapSeconds) {
+        this.gapSeconds = gapSeconds;
+    }
+
+    /**
+     * Continue after last stored position
+     * @param segment Last segment
+     * @param lat Last latitude
+     * @param lon Last longitude
+     * @param time Last time (seconds)
+     */
+    void restore(int segment, double lat, double lon, long time) {
+        this.segment = segment;
+        lastLat = lat;
+        lastLon = lon;
+        lastTime = time;
+        hasLast = true;
+    }
+
+    /**
+     * Offer position being stored
+     * @param lat Latitude
+     * @param lon Longitude
+     * @param time Time (seconds)
+     */
+    void offer(double lat, double lon, long time) {
+        if (!hasLast) {
+            segment = Math.max(segment, 1);
+            distance = 0;
+        } else if (breakPending || (gapSeconds > 0 && time - lastTime > gapSeconds)) {
+            segment++;
+            distance = 0;
+        } else {
+            Location.distanceBetween(lastLat, lastLon, lat, lon, results);
+            distance = results[0];
+        }
+        breakPending = false;
+        hasLast = true;
+        lastLat = lat;
+        lastLon = lon;
+        lastTime = time;
+    }
+
+    /**
+     * Start new segment with next position, eg. after stop
+     */
+    void breakSegment() {
+        breakPending = true;
+    }
+
+    /**
+     * Get segment of last offered position
+     * @return Segment number, starting from 1
+     */
+    int getSegment() {
+        return segment;
+    }
+
+    /**
+     * Get distance of last offered position from previous one in segment
+     * @return Distance (meters), 0 for first position in segment
+     */
+    float getDistance() {
+        return distance;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+/**
+ * Vibration spectrum of fixed size window of acceleration magnitudes.
+ * Radix-2 FFT over Hann windowed signal with mean removed.
+ * Twiddle, bit reversal and window tables are computed once,
+ * all buffers are reused, so no allocation happens per window.
+ * Spectrum is reduced to energies of equally wide frequency bands
+ * from 0 to Nyquist frequency and dominant frequency.
+ */
+
+class VibrationSpectrum {
+
+    static final int BANDS_COUNT = 16;
+
+    private final int size;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] reversed;
+    private final float[] window;
+    private final int[] bands;
+    // energy normalization, so that sum of band energies approximates signal variance
+    private final float scale;
+
+    private final float[] re;
+    private final float[] im;
+    private final float[] energies = new float[BANDS_COUNT];
+    private float rate;
+    private float dominant;
+
+    /**
+     * Constructor
+     * @param size Window size, power of two, at least 2 * bands count
+     */
+    VibrationSpectrum(int size) {
+        if (size < 2 * BANDS_COUNT || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Invalid window size: " + size);
+        }
+        this.size = size;
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            final double angle = -2 * Math.PI * i / size;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+        reversed = new int[size];
+        final int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        window = new float[size];
+        double windowPower = 0;
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+            windowPower += window[i] * window[i];
+        }
+        scale = (float) (2 / (size * windowPower));
+        bands = new int[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            bands[k] = k * BANDS_COUNT / (size / 2);
+        }
+        re = new float[size];
+        im = new float[size];
+    }
+
+    /**
+     * Get window size
+     * @return Number of samples
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Compute spectrum of window
+     * @param samples Samples, at least window size
+     * @param durationNanos Time between first and last sample (nanoseconds)
+     */
+    void compute(float[] samples, long durationNanos) {
+        rate = (durationNanos > 0) ? (size - 1) * 1e9f / durationNanos : 0;
+
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += samples[i];
+        }
+        final float mean = (float) (sum / size);
+        for (int i = 0; i < size; i++) {
+            final int j = reversed[i];
+            re[j] = (samples[i] - mean) * window[i];
+            im[j] = 0;
+        }
+
+        for (int half = 1; half < size; half <<= 1) {
+            final int step = size / (2 * half);
+            for (int start = 0; start < size; start += 2 * half) {
+                for (int k = 0; k < half; k++) {
+                    final int even = start + k;
+                    final int odd = even + half;
+                    final float wr = cos[k * step];
+                    final float wi = sin[k * step];
+                    final float tr = re[odd] * wr - im[odd] * wi;
+                    final float ti = re[odd] * wi + im[odd] * wr;
+                    re[odd] = re[even] - tr;
+                    im[odd] = im[even] - ti;
+                    re[even] += tr;
+                    im[even] += ti;
+                }
+            }
+        }
+
+        for (int b = 0; b < BANDS_COUNT; b++) {
+            energies[b] = 0;
+        }
+        float max = 0;
+        int maxBin = 0;
+        // skip DC bin, mean was removed
+        for (int k = 1; k < size / 2; k++) {
+            final float power = (re[k] * re[k] + im[k] * im[k]) * scale;
+            energies[bands[k]] += power;
+            if (power > max) {
+                max = power;
+                maxBin = k;
+            }
+        }
+        dominant = maxBin * rate / size;
+    }
+
+    /**
+     * Get measured sampling rate of last window
+     * @return Rate (Hz)
+     */
+    float getRate() {
+        return rate;
+    }
+
+    /**
+     * Get dominant frequency of last window
+     * @return Frequency (Hz), 0 for flat spectrum
+     */
+    float getDominant() {
+        return dominant;
+    }
+
+    /**
+     * Get band energies of last window.
+     * Band i covers frequencies from i to i + 1 of rate / (2 * bands count).
+     * Array is reused by next computation.
+     * @return Energies ((m/s^2)^2)
+     */
+    float[] getEnergies() {
+        return energies;
+    }
+}
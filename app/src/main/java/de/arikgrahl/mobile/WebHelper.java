@@ -72,11 +72,18 @@ class WebHelper {
 //    static final String PARAM_IMAGEID = "imageid";
     static final String PARAM_TRACKID = "trackid";
 
-    private static final String ACTION_ADDACC = "addacc";
+    // sensor samples (action and samples parameter depend on sensor channel)
     static final String PARAM_X = "x";
     static final String PARAM_Y = "y";
     static final String PARAM_Z = "z";
 
+    // vibration spectra
+    private static final String ACTION_ADDSPECTRA = "addspectra";
+    private static final String PARAM_SPECTRA = "spectra";
+    static final String PARAM_RATE = "rate";
+    static final String PARAM_DOMINANT = "dominant";
+    static final String PARAM_ENERGIES = "energies";
+
     // auth
     private static final String ACTION_AUTH = "auth";
     // todo adduser not implemented (do we need it?)
@@ -245,23 +252,70 @@ class WebHelper {
         }
     }
 
-    void postAcceleration(Map<String, String>[] params) throws IOException, WebAuthException {
-        Map<String, String> param = new HashMap<String, String>();
-        String[] accelerations = new String[10];
-        for (int i = 0; i < 10; i++) {
-            if (params[i] != null) {
-                accelerations[i] = params[i].get("trackid") + "," + params[i].get("x") + ","  + params[i].get("y") + ","  + params[i].get("z") + "," + params[i].get("time");
+    /**
+     * Upload batch of sensor samples to server
+     * @param channel Sensor channel
+     * @param params Array of parameters maps (sample properties)
+     * @param count Number of samples in batch
+     * @throws IOException Connection error
+     * @throws WebAuthException Authorization error
+     */
+    void postSamples(SensorChannel channel, Map<String, String>[] params, int count) throws IOException, WebAuthException {
+        if (Logger.DEBUG) { Log.d(TAG, "[postSamples " + channel + ": " + count + "]"); }
+        final String[] valueParams = { PARAM_X, PARAM_Y, PARAM_Z };
+        String[] samples = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder sample = new StringBuilder(params[i].get(PARAM_TRACKID));
+            for (int j = 0; j < channel.getValuesCount(); j++) {
+                sample.append(",").append(params[i].get(valueParams[j]));
             }
+            sample.append(",").append(params[i].get(PARAM_TIME));
+            samples[i] = sample.toString();
+        }
+        Map<String, String> param = new HashMap<>();
+        param.put(channel.getWebParam(), TextUtils.join(";", samples));
+        param.put(PARAM_ACTION, channel.getWebAction());
+        String response = postWithParams(param);
+        boolean error = true;
+        try {
+            JSONObject json = new JSONObject(response);
+            error = json.getBoolean("error");
+        } catch (JSONException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[postSamples json failed: " + e + "]"); }
+        }
+        if (error) {
+            throw new IOException(context.getString(R.string.e_server_response));
+        }
+    }
+
+    /**
+     * Upload batch of vibration spectra to server.
+     * Each spectrum is sent as track id, rate, dominant frequency, band energies and time
+     * @param params Array of parameters maps (spectrum properties)
+     * @param count Number of spectra in batch
+     * @throws IOException Connection error
+     * @throws WebAuthException Authorization error
+     */
+    void postSpectra(Map<String, String>[] params, int count) throws IOException, WebAuthException {
+        if (Logger.DEBUG) { Log.d(TAG, "[postSpectra: " + count + "]"); }
+        String[] spectra = new String[count];
+        for (int i = 0; i < count; i++) {
+            spectra[i] = params[i].get(PARAM_TRACKID) +
+                    "," + params[i].get(PARAM_RATE) +
+                    "," + params[i].get(PARAM_DOMINANT) +
+                    "," + params[i].get(PARAM_ENERGIES) +
+                    "," + params[i].get(PARAM_TIME);
         }
-        param.put("accelerations", TextUtils.join(";", accelerations));
-        param.put(PARAM_ACTION, ACTION_ADDACC);
+        Map<String, String> param = new HashMap<>();
+        param.put(PARAM_SPECTRA, TextUtils.join(";", spectra));
+        param.put(PARAM_ACTION, ACTION_ADDSPECTRA);
         String response = postWithParams(param);
         boolean error = true;
         try {
             JSONObject json = new JSONObject(response);
             error = json.getBoolean("error");
         } catch (JSONException e) {
-            if (Logger.DEBUG) { Log.d(TAG, "[postAcceleration json failed: " + e + "]"); }
+            if (Logger.DEBUG) { Log.d(TAG, "[postSpectra json failed: " + e + "]"); }
         }
         if (error) {
             throw new IOException(context.getString(R.string.e_server_response));
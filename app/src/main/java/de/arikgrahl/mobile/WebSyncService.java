@@ -20,15 +20,12 @@ import android.util.Log;
 import org.json.JSONException;
 
 import java.io.IOException;
-import java.lang.reflect.Array;
 import java.net.ConnectException;
 import java.net.MalformedURLException;
 import java.net.NoRouteToHostException;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import static android.app.PendingIntent.FLAG_ONE_SHOT;
@@ -41,10 +38,9 @@ import static android.app.PendingIntent.FLAG_ONE_SHOT;
 public class WebSyncService extends IntentService {
 
     private static final String TAG = WebSyncService.class.getSimpleName();
-    public static final String BROADCAST_SYNC_FAILED = "de.arikgrahl.mobile.broadcast.sync_failed";
-    public static final String BROADCAST_SYNC_DONE = "de.arikgrahl.mobile.broadcast.sync_done";
 
     private DbAccess db;
+    private final EventBus bus = EventBus.getInstance();
     private WebHelper web;
     private static PendingIntent pi = null;
 
@@ -134,7 +130,7 @@ public class WebSyncService extends IntentService {
     }
 
     /**
-     * Synchronize all positions in database.
+     * Synchronize all positions and sensor samples in database.
      * Skips already synchronized, uploads new ones
      * @param trackId Current track id
      */
@@ -142,19 +138,21 @@ public class WebSyncService extends IntentService {
         if (Logger.DEBUG) {
             Log.d(TAG, "doSync");
         }
+        final int unsyncedSamples = db.countUnsyncedSamples();
         // iterate over positions in db
         try (Cursor cursor = db.getUnsynced()) {
             if (Logger.DEBUG) {
                 Log.d(TAG, "sync positions");
             }
+            int unsyncedPositions = cursor.getCount();
             while (cursor.moveToNext()) {
                 int rowId = cursor.getInt(cursor.getColumnIndex(DbContract.Positions._ID));
                 Map<String, String> params = cursorToMap(cursor);
                 params.put(WebHelper.PARAM_TRACKID, String.valueOf(trackId));
                 web.postPosition(params);
                 db.setSynced(rowId);
-                Intent intent = new Intent(BROADCAST_SYNC_DONE);
-                sendBroadcast(intent);
+                unsyncedPositions--;
+                bus.post(new EventBus.Event(EventBus.Type.SYNC_DONE, 0, unsyncedPositions, unsyncedSamples, null));
             }
         } catch (IOException e) {
             // handle web errors
@@ -163,6 +161,7 @@ public class WebSyncService extends IntentService {
             }
             // schedule retry
             handleError(e);
+            return;
         } catch (WebAuthException e) {
             if (Logger.DEBUG) {
                 Log.d(TAG, "[websync auth exception: " + e + "]");
@@ -176,41 +175,66 @@ public class WebSyncService extends IntentService {
                 // schedule retry
                 handleError(e2);
             }
+            return;
         }
 
-        Map<String, String>[] params = new HashMap[BULK_SIZE];
-        int[] rowIds = new int[BULK_SIZE];
-        int i = 0;
+        // uploaded positions of stays may be collapsed now
+        db.collapseStays();
 
-        try (Cursor cursor = db.getUnsyncedAccelerations()) {
-            if (Logger.DEBUG) {
-                Log.d(TAG, "sync accelerations");
-            }
-            while (cursor.moveToNext()) {
-                rowIds[i] = cursor.getInt(cursor.getColumnIndex(DbContract.Accelerations._ID));
-                params[i] = cursorToMapAcceleration(cursor);
-                params[i].put(WebHelper.PARAM_TRACKID, String.valueOf(trackId));
-                i++;
-                if (i == 10) {
-                    i = 0;
-                    syncAccelerations(params, rowIds);
-                }
+        // sensor samples and spectra
+        for (SensorChannel channel : SensorChannel.values()) {
+            if (!doSyncSamples(channel, trackId)) {
+                return;
             }
-            syncAccelerations(params, rowIds);
-        } catch (WebAuthException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+        if (doSyncSpectra(trackId)) {
+            bus.post(new EventBus.Event(EventBus.Type.SYNC_DONE, 0,
+                    db.countUnsyncedPositions(), db.countUnsyncedSamples(), null));
         }
     }
 
-    private void syncAccelerations(Map<String, String>[] params, int[] rowIds) throws IOException, WebAuthException {
-        web.postAcceleration(params);
-        db.setSyncedAcceleration(rowIds);
-        for (int i = 0; i < BULK_SIZE; i++) {
-            params[i] = null;
-            rowIds[i] = 0;
+    /**
+     * Synchronize sensor samples of given channel in batches.
+     * @param channel Sensor channel
+     * @param trackId Current track id
+     * @return True on success, false on error
+     */
+    private boolean doSyncSamples(SensorChannel channel, int trackId) {
+        @SuppressWarnings("unchecked")
+        Map<String, String>[] params = new HashMap[BULK_SIZE];
+        int firstId = 0;
+        int lastId = 0;
+        int count = 0;
+        try (Cursor cursor = db.getUnsyncedSamples(channel)) {
+            if (Logger.DEBUG) { Log.d(TAG, "sync samples: " + channel); }
+            while (cursor.moveToNext()) {
+                lastId = cursor.getInt(cursor.getColumnIndex(DbContract.Samples._ID));
+                if (count == 0) {
+                    firstId = lastId;
+                }
+                params[count] = cursorToMapSample(cursor, channel);
+                params[count].put(WebHelper.PARAM_TRACKID, String.valueOf(trackId));
+                count++;
+                if (count == BULK_SIZE) {
+                    web.postSamples(channel, params, count);
+                    db.setSyncedSamples(channel, firstId, lastId);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                web.postSamples(channel, params, count);
+                db.setSyncedSamples(channel, firstId, lastId);
+            }
+        } catch (IOException | WebAuthException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[websync samples exception: " + e + "]"); }
+            if (e instanceof WebAuthException) {
+                WebHelper.deauthorize();
+            }
+            // schedule retry
+            handleError(e);
+            return false;
         }
+        return true;
     }
 
     /**
@@ -235,11 +259,10 @@ public class WebSyncService extends IntentService {
         if (Logger.DEBUG) { Log.d(TAG, "[websync retry: " + message + "]"); }
 
         db.setError(message);
-        Intent intent = new Intent(BROADCAST_SYNC_FAILED);
-        intent.putExtra("message", message);
-        sendBroadcast(intent);
+        bus.post(new EventBus.Event(EventBus.Type.SYNC_FAILED, 0,
+                db.countUnsyncedPositions(), db.countUnsyncedSamples(), message));
         // retry only if tracking is on
-        if (LoggerService.isRunning()) {
+        if (LoggerStatus.isRunning(this)) {
             setPending();
         }
     }
@@ -310,12 +333,79 @@ public class WebSyncService extends IntentService {
         return params;
     }
 
-    private Map<String, String> cursorToMapAcceleration(Cursor cursor) {
+    /**
+     * Synchronize vibration spectra in batches.
+     * @param trackId Current track id
+     * @return True on success, false on error
+     */
+    private boolean doSyncSpectra(int trackId) {
+        @SuppressWarnings("unchecked")
+        Map<String, String>[] params = new HashMap[BULK_SIZE];
+        int firstId = 0;
+        int lastId = 0;
+        int count = 0;
+        try (Cursor cursor = db.getUnsyncedSpectra()) {
+            if (Logger.DEBUG) { Log.d(TAG, "sync spectra"); }
+            while (cursor.moveToNext()) {
+                lastId = cursor.getInt(cursor.getColumnIndex(DbContract.Spectra._ID));
+                if (count == 0) {
+                    firstId = lastId;
+                }
+                params[count] = cursorToMapSpectrum(cursor);
+                params[count].put(WebHelper.PARAM_TRACKID, String.valueOf(trackId));
+                count++;
+                if (count == BULK_SIZE) {
+                    web.postSpectra(params, count);
+                    db.setSyncedSpectra(firstId, lastId);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                web.postSpectra(params, count);
+                db.setSyncedSpectra(firstId, lastId);
+            }
+        } catch (IOException | WebAuthException e) {
+            if (Logger.DEBUG) { Log.d(TAG, "[websync spectra exception: " + e + "]"); }
+            if (e instanceof WebAuthException) {
+                WebHelper.deauthorize();
+            }
+            // schedule retry
+            handleError(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Convert spectra cursor to map of request parameters
+     *
+     * @param cursor Cursor
+     * @return Map of parameters
+     */
+    private Map<String, String> cursorToMapSpectrum(Cursor cursor) {
+        Map<String, String> params = new HashMap<>();
+        params.put(WebHelper.PARAM_TIME, DbAccess.getSampleTime(cursor));
+        params.put(WebHelper.PARAM_RATE, cursor.getString(cursor.getColumnIndex(DbContract.Spectra.COLUMN_RATE)));
+        params.put(WebHelper.PARAM_DOMINANT, cursor.getString(cursor.getColumnIndex(DbContract.Spectra.COLUMN_DOMINANT)));
+        params.put(WebHelper.PARAM_ENERGIES, cursor.getString(cursor.getColumnIndex(DbContract.Spectra.COLUMN_ENERGIES)));
+        return params;
+    }
+
+    /**
+     * Convert samples cursor to map of request parameters
+     *
+     * @param cursor Cursor
+     * @param channel Sensor channel
+     * @return Map of parameters
+     */
+    private Map<String, String> cursorToMapSample(Cursor cursor, SensorChannel channel) {
+        final String[] valueParams = { WebHelper.PARAM_X, WebHelper.PARAM_Y, WebHelper.PARAM_Z };
         Map<String, String> params = new HashMap<>();
-        params.put(WebHelper.PARAM_TIME, DbAccess.getTime(cursor));
-        params.put(WebHelper.PARAM_X, DbAccess.getX(cursor));
-        params.put(WebHelper.PARAM_Y, DbAccess.getY(cursor));
-        params.put(WebHelper.PARAM_Z, DbAccess.getZ(cursor));
+        params.put(WebHelper.PARAM_TIME, DbAccess.getSampleTime(cursor));
+        String[] values = DbAccess.getSampleValues(cursor, channel.getValuesCount());
+        for (int i = 0; i < values.length; i++) {
+            params.put(valueParams[i], values[i]);
+        }
         return params;
     }
 
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import java.util.Locale;
+
+/**
+ * Geofenced zone, circle or polygon.
+ * Bounding box is precomputed for cheap prefiltering.
+ * Text format: "name;mode;lat,lon;radius" for circle,
+ * "name;mode;lat,lon;lat,lon;lat,lon[;...]" for polygon.
+ */
+
+class Zone {
+
+    /** Positions inside zone are not stored */
+    static final String MODE_PRIVACY = "privacy";
+    /** Inside zone only low rate network updates are requested */
+    static final String MODE_LOW_POWER = "lowpower";
+
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    private static final String FIELD_SEPARATOR = ";";
+    private static final String COORD_SEPARATOR = ",";
+
+    private final String name;
+    private final String mode;
+    private final double[] lats;
+    private final double[] lons;
+    private final double radius;
+
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+    /**
+     * Constructor
+     * @param name Name
+     * @param mode Mode, MODE_PRIVACY or MODE_LOW_POWER
+     * @param lats Vertices latitudes, single center for circle
+     * @param lons Vertices longitudes, single center for circle
+     * @param radius Circle radius in meters, 0 for polygon
+     * @throws IllegalArgumentException On invalid geometry or mode
+     */
+    Zone(String name, String mode, double[] lats, double[] lons, double radius) {
+        if (!MODE_PRIVACY.equals(mode) && !MODE_LOW_POWER.equals(mode)) {
+            throw new IllegalArgumentException("Unknown zone mode: " + mode);
+        }
+        if (lats.length != lons.length || (radius > 0 ? lats.length != 1 : lats.length < 3)) {
+            throw new IllegalArgumentException("Invalid zone geometry: " + name);
+        }
+        this.name = name;
+        this.mode = mode;
+        this.lats = lats;
+        this.lons = lons;
+        this.radius = radius;
+        if (radius > 0) {
+            final double dLat = radius / METERS_PER_DEGREE;
+            final double dLon = radius / getMetersPerDegreeLon(lats[0]);
+            minLat = lats[0] - dLat;
+            maxLat = lats[0] + dLat;
+            minLon = lons[0] - dLon;
+            maxLon = lons[0] + dLon;
+        } else {
+            double latLo = lats[0], latHi = lats[0], lonLo = lons[0], lonHi = lons[0];
+            for (int i = 1; i < lats.length; i++) {
+                latLo = Math.min(latLo, lats[i]);
+                latHi = Math.max(latHi, lats[i]);
+                lonLo = Math.min(lonLo, lons[i]);
+                lonHi = Math.max(lonHi, lons[i]);
+            }
+            minLat = latLo;
+            maxLat = latHi;
+            minLon = lonLo;
+            maxLon = lonHi;
+        }
+    }
+
+    /**
+     * Parse zone from text line
+     * @param line Zone definition
+     * @return Zone
+     * @throws IllegalArgumentException On invalid definition
+     */
+    static Zone parse(String line) {
+        final String[] fields = line.trim().split(FIELD_SEPARATOR);
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Invalid zone: " + line);
+        }
+        final String name = fields[0].trim();
+        final String mode = fields[1].trim().toLowerCase(Locale.US);
+        try {
+            if (fields.length == 4 && !fields[3].contains(COORD_SEPARATOR)) {
+                final String[] center = fields[2].split(COORD_SEPARATOR);
+                return new Zone(name, mode,
+                        new double[] { Double.parseDouble(center[0].trim()) },
+                        new double[] { Double.parseDouble(center[1].trim()) },
+                        Double.parseDouble(fields[3].trim()));
+            }
+            final int count = fields.length - 2;
+            final double[] lats = new double[count];
+            final double[] lons = new double[count];
+            for (int i = 0; i < count; i++) {
+                final String[] vertex = fields[i + 2].split(COORD_SEPARATOR);
+                lats[i] = Double.parseDouble(vertex[0].trim());
+                lons[i] = Double.parseDouble(vertex[1].trim());
+            }
+            return new Zone(name, mode, lats, lons, 0);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid zone: " + line, e);
+        }
+    }
+
+    /**
+     * Create zone from stored columns
+     * @param name Name
+     * @param mode Mode
+     * @param vertices Vertices "lat,lon;lat,lon..."
+     * @param radius Circle radius, 0 for polygon
+     * @return Zone
+     * @throws IllegalArgumentException On invalid definition
+     */
+    static Zone fromColumns(String name, String mode, String vertices, double radius) {
+        String line = name + FIELD_SEPARATOR + mode + FIELD_SEPARATOR + vertices;
+        if (radius > 0) {
+            line += FIELD_SEPARATOR + radius;
+        }
+        return parse(line);
+    }
+
+    /**
+     * Format zone as text line
+     * @return Zone definition
+     */
+    String format() {
+        String line = name + FIELD_SEPARATOR + mode + FIELD_SEPARATOR + getVertices();
+        if (radius > 0) {
+            line += FIELD_SEPARATOR + radius;
+        }
+        return line;
+    }
+
+    /**
+     * Check whether point lies inside zone
+     * @param lat Latitude
+     * @param lon Longitude
+     * @return True if inside
+     */
+    boolean contains(double lat, double lon) {
+        if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon) {
+            return false;
+        }
+        if (radius > 0) {
+            final double dy = (lat - lats[0]) * METERS_PER_DEGREE;
+            final double dx = (lon - lons[0]) * getMetersPerDegreeLon(lats[0]);
+            return dx * dx + dy * dy <= radius * radius;
+        }
+        // ray casting
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Get vertices as text
+     * @return Vertices "lat,lon;lat,lon..."
+     */
+    String getVertices() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lats.length; i++) {
+            if (i > 0) {
+                sb.append(FIELD_SEPARATOR);
+            }
+            sb.append(lats[i]).append(COORD_SEPARATOR).append(lons[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get zone name
+     * @return Name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get zone mode
+     * @return MODE_PRIVACY or MODE_LOW_POWER
+     */
+    String getMode() {
+        return mode;
+    }
+
+    /**
+     * Get circle radius
+     * @return Radius in meters, 0 for polygon
+     */
+    double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Check whether positions inside zone are hidden
+     * @return True for privacy zone
+     */
+    boolean isPrivacy() {
+        return MODE_PRIVACY.equals(mode);
+    }
+
+    /**
+     * Get length of one degree of longitude at given latitude
+     * @param lat Latitude
+     * @return Meters
+     */
+    private static double getMetersPerDegreeLon(double lat) {
+        return Math.max(METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)), 1);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of geofenced zones checked for every fix,
+ * grouped by zone mode.
+ */
+
+class ZoneSet {
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    private final Zone[] privacyZones;
+    private final Zone[] lowPowerZones;
+
+    /**
+     * Constructor
+     * @param list Zones
+     */
+    ZoneSet(List<Zone> list) {
+        final List<Zone> privacy = new ArrayList<>();
+        final List<Zone> lowPower = new ArrayList<>();
+        for (Zone zone : list) {
+            if (zone.isPrivacy()) {
+                privacy.add(zone);
+            } else {
+                lowPower.add(zone);
+            }
+        }
+        privacyZones = privacy.toArray(new Zone[0]);
+        lowPowerZones = lowPower.toArray(new Zone[0]);
+    }
+
+    /**
+     * Check whether point lies inside any privacy zone
+     * @param lat Latitude
+     * @param lon Longitude
+     * @return True if inside
+     */
+    boolean isPrivate(double lat, double lon) {
+        return contains(privacyZones, lat, lon);
+    }
+
+    /**
+     * Check whether point lies inside any low power zone
+     * @param lat Latitude
+     * @param lon Longitude
+     * @return True if inside
+     */
+    boolean isLowPower(double lat, double lon) {
+        return contains(lowPowerZones, lat, lon);
+    }
+
+    /**
+     * Check whether point lies inside any of zones
+     * @param zones Zones
+     * @param lat Latitude
+     * @param lon Longitude
+     * @return True if inside
+     */
+    private static boolean contains(Zone[] zones, double lat, double lon) {
+        for (Zone zone : zones) {
+            if (zone.contains(lat, lon)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse zones, one per line, blank lines are skipped
+     * @param text Zones definitions
+     * @return Zones list
+     * @throws IllegalArgumentException On invalid definition
+     */
+    static List<Zone> parse(String text) {
+        final List<Zone> list = new ArrayList<>();
+        if (text != null) {
+            for (String line : text.split(LINE_SEPARATOR)) {
+                if (!line.trim().isEmpty()) {
+                    list.add(Zone.parse(line));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Format zones, one per line
+     * @param list Zones
+     * @return Zones definitions
+     */
+    static String format(List<Zone> list) {
+        final StringBuilder sb = new StringBuilder();
+        for (Zone zone : list) {
+            if (sb.length() > 0) {
+                sb.append(LINE_SEPARATOR);
+            }
+            sb.append(zone.format());
+        }
+        return sb.toString();
+    }
+}
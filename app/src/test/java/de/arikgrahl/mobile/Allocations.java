@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measure heap allocation of current thread on HotSpot JVM
+ */
+
+class Allocations {
+
+    private final com.sun.management.ThreadMXBean bean;
+    private final long overhead;
+
+    /**
+     * Constructor, skips calling test if JVM does not report allocations
+     */
+    Allocations() {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        bean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        final long start = getAllocatedBytes();
+        overhead = getAllocatedBytes() - start;
+    }
+
+    /**
+     * Get bytes allocated by current thread so far
+     * @return Bytes
+     */
+    private long getAllocatedBytes() {
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Get bytes allocated by task, excluding measurement itself
+     * @param task Task
+     * @return Bytes
+     */
+    long measure(Runnable task) {
+        final long start = getAllocatedBytes();
+        task.run();
+        return Math.max(getAllocatedBytes() - start - overhead, 0);
+    }
+
+    /**
+     * Get bytes allocated by task on current thread and on other thread serving it
+     * @param task Task
+     * @param other Other thread, eg. database writer
+     * @return Bytes
+     */
+    long measure(Runnable task, Thread other) {
+        final long otherStart = bean.getThreadAllocatedBytes(other.getId());
+        final long bytes = measure(task);
+        return bytes + Math.max(bean.getThreadAllocatedBytes(other.getId()) - otherStart, 0);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Join of sensor samples to positions across time bases
+ */
+
+public class DbContractTest {
+
+    private static final long EPOCH = 1500000000000L;
+
+    /**
+     * Position time as written and read back from text column
+     * @param epochMillis Location time (UTC milliseconds)
+     * @return Stored position time (UTC seconds)
+     */
+    private static long storedPositionTime(long epochMillis) {
+        return Long.parseLong(String.valueOf(epochMillis / 1000));
+    }
+
+    /**
+     * Check if sample falls into range joined to position
+     * @param positionTime Position time (UTC seconds)
+     * @param sampleTime Sample time (UTC milliseconds)
+     * @return True if joined
+     */
+    private static boolean isJoined(long positionTime, long sampleTime) {
+        return sampleTime >= DbContract.Positions.toSampleTime(positionTime)
+                && sampleTime < DbContract.Positions.toSampleTime(positionTime + 1);
+    }
+
+    @Test
+    public void positionSecondMapsToSampleMilliseconds() {
+        assertEquals(EPOCH, DbContract.Positions.toSampleTime(EPOCH / 1000));
+        assertEquals(0, DbContract.Positions.toSampleTime(0));
+    }
+
+    @Test
+    public void samplesOfSameSecondAreJoined() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            final long fixTime = EPOCH + (long) (random.nextDouble() * 1000000000L);
+            final long positionTime = storedPositionTime(fixTime);
+            final long offset = fixTime % 1000;
+            // any sample in the same second, including fix instant
+            assertTrue(isJoined(positionTime, fixTime));
+            assertTrue(isJoined(positionTime, fixTime - offset));
+            assertTrue(isJoined(positionTime, fixTime - offset + 999));
+            // neighbouring seconds belong to other positions
+            assertFalse(isJoined(positionTime, fixTime - offset - 1));
+            assertFalse(isJoined(positionTime, fixTime - offset + 1000));
+        }
+    }
+
+    @Test
+    public void consecutivePositionRangesDoNotOverlap() {
+        for (long sample = EPOCH; sample < EPOCH + 5000; sample++) {
+            int joined = 0;
+            for (long position = EPOCH / 1000 - 1; position <= EPOCH / 1000 + 6; position++) {
+                if (isJoined(position, sample)) {
+                    joined++;
+                }
+            }
+            assertEquals(1, joined);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress database writer with concurrent producers
+ */
+
+public class DbWriterTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int TASKS = 500;
+
+    private JournalWriter writer;
+
+    /**
+     * Writer with in-memory journal instead of database transactions.
+     * Tasks add keys to pending list, which is published on commit and discarded on rollback.
+     */
+    private static class JournalWriter extends DbWriter {
+        private final List<Long> pending = new ArrayList<>();
+        private final List<Long> committed = new ArrayList<>();
+        private boolean isInTransaction = false;
+        private boolean isSuccessful = false;
+
+        @Override
+        void beginTransaction(SQLiteDatabase database) {
+            assertFalse(isInTransaction);
+            isInTransaction = true;
+            isSuccessful = false;
+            pending.clear();
+        }
+
+        @Override
+        void setTransactionSuccessful(SQLiteDatabase database) {
+            isSuccessful = true;
+        }
+
+        @Override
+        void endTransaction(SQLiteDatabase database) {
+            if (isSuccessful) {
+                synchronized (committed) {
+                    committed.addAll(pending);
+                }
+            }
+            isInTransaction = false;
+        }
+
+        /**
+         * Add key in current transaction, called on writer thread
+         * @param key Key
+         */
+        void put(long key) {
+            assertTrue(isInTransaction);
+            pending.add(key);
+        }
+
+        /**
+         * Check if key was committed
+         * @param key Key
+         * @return True if committed
+         */
+        boolean isCommitted(long key) {
+            synchronized (committed) {
+                return committed.contains(key);
+            }
+        }
+    }
+
+    /**
+     * Producer task body
+     */
+    private interface Producer {
+        /**
+         * Run producer
+         * @param id Producer id
+         * @throws Exception Assertion or other error
+         */
+        void run(int id) throws Exception;
+    }
+
+    @Before
+    public void setUp() {
+        writer = new JournalWriter();
+    }
+
+    /**
+     * Run producers in parallel, rethrow first failure
+     * @param producer Producer
+     * @throws Exception Producer failure
+     */
+    private static void runProducers(Producer producer) throws Exception {
+        final Thread[] threads = new Thread[PRODUCERS];
+        final Throwable[] errors = new Throwable[PRODUCERS];
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int id = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                    producer.run(id);
+                } catch (Throwable e) {
+                    errors[id] = e;
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+        for (int p = 0; p < PRODUCERS; p++) {
+            threads[p].join(60000);
+            assertFalse("producer " + p + " hangs", threads[p].isAlive());
+        }
+        for (Throwable error : errors) {
+            if (error instanceof Exception) {
+                throw (Exception) error;
+            } else if (error != null) {
+                throw new AssertionError(error);
+            }
+        }
+    }
+
+    /**
+     * Get unique task key
+     * @param producer Producer id
+     * @param task Task number
+     * @return Key
+     */
+    private static long key(int producer, int task) {
+        return (long) producer * TASKS + task;
+    }
+
+    @Test
+    public void concurrentTasksAreGroupedAndCommittedBeforeReturn() throws Exception {
+        runProducers(id -> {
+            for (int i = 0; i < TASKS; i++) {
+                final long key = key(id, i);
+                assertTrue(writer.run(null, () -> writer.put(key)));
+                // caller sees its own write
+                assertTrue(writer.isCommitted(key));
+            }
+        });
+        final Set<Long> unique = new HashSet<>(writer.committed);
+        assertEquals(PRODUCERS * TASKS, writer.committed.size());
+        assertEquals(PRODUCERS * TASKS, unique.size());
+        assertTrue("transactions " + writer.getTransactionsCount(),
+                writer.getTransactionsCount() < PRODUCERS * TASKS);
+        assertEquals(0, writer.getFailuresCount());
+    }
+
+    @Test
+    public void tasksQueuedDuringTransactionShareNextOne() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread blocker = new Thread(() -> writer.run(null, () -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        blocker.start();
+        blocked.await();
+        final AtomicInteger queued = new AtomicInteger();
+        final Thread releaser = new Thread(() -> {
+            while (queued.get() < PRODUCERS) {
+                Thread.yield();
+            }
+            try {
+                // let last producers reach the queue
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        runProducers(id -> {
+            final long key = key(id, 0);
+            queued.incrementAndGet();
+            assertTrue(writer.run(null, () -> writer.put(key)));
+        });
+        blocker.join();
+        releaser.join();
+        assertEquals(PRODUCERS, writer.committed.size());
+        // blocking transaction and one group
+        assertEquals(2, writer.getTransactionsCount());
+    }
+
+    @Test
+    public void failureIsReportedOnlyToFailingTask() throws Exception {
+        final AtomicInteger failed = new AtomicInteger();
+        runProducers(id -> {
+            for (int i = 0; i < TASKS; i++) {
+                final long key = key(id, i);
+                final boolean isFailing = key % 7 == 0;
+                final boolean isCommitted = writer.run(null, () -> {
+                    writer.put(key);
+                    if (isFailing) {
+                        throw new IllegalStateException("constraint");
+                    }
+                });
+                assertEquals("key " + key, !isFailing, isCommitted);
+                assertEquals("key " + key, !isFailing, writer.isCommitted(key));
+                if (isFailing) {
+                    failed.incrementAndGet();
+                }
+            }
+        });
+        // rolled back group members are committed again exactly once
+        final Set<Long> unique = new HashSet<>(writer.committed);
+        assertEquals(PRODUCERS * TASKS - failed.get(), writer.committed.size());
+        assertEquals(writer.committed.size(), unique.size());
+        assertEquals(failed.get(), writer.getFailuresCount());
+    }
+
+    @Test
+    public void nestedTaskRunsInCurrentTransaction() {
+        final boolean[] isNestedCommitted = new boolean[1];
+        assertTrue(writer.run(null, () -> {
+            writer.put(1);
+            isNestedCommitted[0] = writer.run(null, () -> writer.put(2));
+        }));
+        assertTrue(isNestedCommitted[0]);
+        assertTrue(writer.isCommitted(1));
+        assertTrue(writer.isCommitted(2));
+        assertEquals(1, writer.getTransactionsCount());
+    }
+}
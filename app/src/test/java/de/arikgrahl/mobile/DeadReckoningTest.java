@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Validate dead reckoning estimates against known motion
+ */
+
+public class DeadReckoningTest {
+
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    private static final double LAT = 52.2297;
+    private static final double LON = 21.0122;
+    private static final float SPEED = 10;
+    private static final float ACCURACY = 5;
+    private static final long TIME = 1500000000000L;
+    private static final long REALTIME = 100000;
+    private static final float GRAVITY = 9.80665f;
+
+    private DeadReckoning deadReckoning;
+
+    @Before
+    public void setUp() {
+        deadReckoning = new DeadReckoning();
+        // device shaking in vehicle
+        for (int i = 0; i < 50; i++) {
+            deadReckoning.onAcceleration(0, 0, GRAVITY + ((i % 2 == 0) ? 2 : -2), (REALTIME + i * 20) * 1000000);
+        }
+    }
+
+    /**
+     * Get north distance between latitudes
+     * @param lat1 Latitude
+     * @param lat2 Latitude
+     * @return Distance (meters)
+     */
+    private static double north(double lat1, double lat2) {
+        return (lat2 - lat1) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Get east distance between longitudes at test latitude
+     * @param lon1 Longitude
+     * @param lon2 Longitude
+     * @return Distance (meters)
+     */
+    private static double east(double lon1, double lon2) {
+        return (lon2 - lon1) * METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT));
+    }
+
+    @Test
+    public void noEstimateWithoutFix() {
+        assertFalse(deadReckoning.estimate(REALTIME + 1000));
+    }
+
+    @Test
+    public void movingNorthIsExtrapolated() {
+        assertTrue(deadReckoning.isMoving());
+        deadReckoning.reset(LAT, LON, SPEED, 0, ACCURACY, TIME, REALTIME);
+        assertTrue(deadReckoning.estimate(REALTIME + 30000));
+        assertEquals(300, north(LAT, deadReckoning.getLatitude()), 0.1);
+        assertEquals(0, east(LON, deadReckoning.getLongitude()), 0.1);
+        assertEquals(SPEED, deadReckoning.getSpeed(), 0);
+    }
+
+    @Test
+    public void movingEastIsExtrapolated() {
+        deadReckoning.reset(LAT, LON, SPEED, 90, ACCURACY, TIME, REALTIME);
+        assertTrue(deadReckoning.estimate(REALTIME + 10000));
+        assertEquals(0, north(LAT, deadReckoning.getLatitude()), 0.1);
+        assertEquals(100, east(LON, deadReckoning.getLongitude()), 0.1);
+    }
+
+    @Test
+    public void estimateFollowsStraightTrack() {
+        // ground truth: constant velocity along bearing 30 degrees
+        final double bearing = Math.toRadians(30);
+        deadReckoning.reset(LAT, LON, SPEED, 30, ACCURACY, TIME, REALTIME);
+        for (int seconds = 1; seconds <= 60; seconds++) {
+            assertTrue(deadReckoning.estimate(REALTIME + seconds * 1000));
+            final double distance = SPEED * seconds;
+            assertEquals(distance * Math.cos(bearing), north(LAT, deadReckoning.getLatitude()), 0.5);
+            assertEquals(distance * Math.sin(bearing), east(LON, deadReckoning.getLongitude()), 0.5);
+        }
+    }
+
+    @Test
+    public void accuracyGrowsWithDistance() {
+        deadReckoning.reset(LAT, LON, SPEED, 0, ACCURACY, TIME, REALTIME);
+        assertTrue(deadReckoning.estimate(REALTIME + 1000));
+        final float near = deadReckoning.getAccuracy();
+        assertTrue(deadReckoning.estimate(REALTIME + 60000));
+        final float far = deadReckoning.getAccuracy();
+        assertTrue(near > ACCURACY);
+        assertTrue(far > near);
+        // drift is fraction of extrapolated distance
+        assertEquals(ACCURACY + 0.2f * 600, far, 0.01);
+    }
+
+    @Test
+    public void noEstimateBeyondHorizon() {
+        deadReckoning.reset(LAT, LON, SPEED, 0, ACCURACY, TIME, REALTIME);
+        assertTrue(deadReckoning.estimate(REALTIME + 5 * 60 * 1000));
+        assertFalse(deadReckoning.estimate(REALTIME + 5 * 60 * 1000 + 1));
+    }
+
+    @Test
+    public void noEstimateBeforeFix() {
+        deadReckoning.reset(LAT, LON, SPEED, 0, ACCURACY, TIME, REALTIME);
+        assertFalse(deadReckoning.estimate(REALTIME));
+        assertFalse(deadReckoning.estimate(REALTIME - 1000));
+    }
+
+    @Test
+    public void stoppedDeviceIsNotAdvanced() {
+        deadReckoning.reset(LAT, LON, SPEED, 0, ACCURACY, TIME, REALTIME);
+        // device rests from 10 s after fix
+        final long stop = REALTIME + 10000;
+        for (int i = 0; i < 500; i++) {
+            deadReckoning.onAcceleration(0, 0, GRAVITY, (stop + i * 20) * 1000000);
+        }
+        assertFalse(deadReckoning.isMoving());
+        assertTrue(deadReckoning.estimate(REALTIME + 60000));
+        // position advanced only until stop detection
+        final double distance = north(LAT, deadReckoning.getLatitude());
+        assertTrue("distance " + distance, distance > 100 && distance < 200);
+        assertEquals(0, deadReckoning.getSpeed(), 0);
+    }
+
+    @Test
+    public void motionResumesEstimation() {
+        for (int i = 0; i < 500; i++) {
+            deadReckoning.onAcceleration(0, 0, GRAVITY, (REALTIME + 1000 + i * 20) * 1000000);
+        }
+        assertFalse(deadReckoning.isMoving());
+        for (int i = 0; i < 50; i++) {
+            deadReckoning.onAcceleration(0, 0, GRAVITY + ((i % 2 == 0) ? 2 : -2), (REALTIME + 20000 + i * 20) * 1000000);
+        }
+        assertTrue(deadReckoning.isMoving());
+    }
+}
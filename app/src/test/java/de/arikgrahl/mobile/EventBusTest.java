@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Event bus delivery to subscribers.
+ * Unit test runtime has no loopers, posting thread is seen as main thread,
+ * so events are delivered synchronously. Cross-thread delivery cost
+ * is measured on device by {@code EventBusBenchmarkTest}.
+ */
+
+public class EventBusTest {
+
+    private final EventBus bus = EventBus.getInstance();
+    private final List<EventBus.Event> received = new ArrayList<>();
+    private final EventBus.Listener listener = received::add;
+
+    /**
+     * Context accepting bridge receiver registration
+     */
+    private final Context context = new ContextWrapper(null) {
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter, String permission,
+                                       Handler scheduler) {
+            return null;
+        }
+
+        @Override
+        public void unregisterReceiver(BroadcastReceiver receiver) {
+        }
+    };
+
+    /**
+     * Listener counting events without storing them
+     */
+    private static class CountingListener implements EventBus.Listener {
+        private long count = 0;
+
+        @Override
+        public void onEvent(EventBus.Event event) {
+            count++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        bus.subscribe(context, listener);
+    }
+
+    @After
+    public void tearDown() {
+        bus.unsubscribe(context, listener);
+    }
+
+    @Test
+    public void eventIsDeliveredWithPayload() {
+        final EventBus.Event event = new EventBus.Event(EventBus.Type.SYNC_DONE, 0, 3, 100, null);
+        bus.post(event);
+        assertEquals(1, received.size());
+        assertSame(event, received.get(0));
+        assertEquals(3, received.get(0).getPositions());
+        assertEquals(100, received.get(0).getSamples());
+    }
+
+    @Test
+    public void eventIsDeliveredToAllSubscribers() {
+        final CountingListener other = new CountingListener();
+        bus.subscribe(context, other);
+        bus.post(new EventBus.Event(EventBus.Type.LOCATION_UPDATED));
+        bus.unsubscribe(context, other);
+        bus.post(new EventBus.Event(EventBus.Type.LOCATION_UPDATED));
+        assertEquals(2, received.size());
+        assertEquals(1, other.count);
+    }
+
+    @Test
+    public void subscribingTwiceDeliversOnce() {
+        bus.subscribe(context, listener);
+        bus.post(new EventBus.Event(EventBus.Type.GPS_ENABLED));
+        assertEquals(1, received.size());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay synthetic noisy tracks through Kalman filter
+ */
+
+public class KalmanFilterTest {
+
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    private static final double LAT = 52.2297;
+    private static final double LON = 21.0122;
+    private static final double ACCURACY = 15;
+    private static final long INTERVAL_MILLIS = 1000;
+
+    /**
+     * Get distance between points, equirectangular approximation
+     * @param lat1 Latitude
+     * @param lon1 Longitude
+     * @param lat2 Latitude
+     * @param lon2 Longitude
+     * @return Distance (meters)
+     */
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        final double dy = (lat2 - lat1) * METERS_PER_DEGREE;
+        final double dx = (lon2 - lon1) * METERS_PER_DEGREE * Math.cos(Math.toRadians(lat1));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Test
+    public void firstFixIsPassedThrough() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.update(LAT, LON, ACCURACY, 1000);
+        assertEquals(LAT, filter.getLatitude(), 0);
+        assertEquals(LON, filter.getLongitude(), 0);
+    }
+
+    @Test
+    public void stationaryNoiseIsReduced() {
+        final KalmanFilter filter = new KalmanFilter();
+        final Random random = new Random(1);
+        double rawError = 0;
+        double filteredError = 0;
+        final int count = 300;
+        final int warmup = 20;
+        for (int i = 0; i < count; i++) {
+            final double lat = LAT + random.nextGaussian() * ACCURACY / METERS_PER_DEGREE;
+            final double lon = LON + random.nextGaussian() * ACCURACY / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT)));
+            filter.update(lat, lon, ACCURACY, i * INTERVAL_MILLIS);
+            if (i >= warmup) {
+                rawError += distance(LAT, LON, lat, lon);
+                filteredError += distance(LAT, LON, filter.getLatitude(), filter.getLongitude());
+            }
+        }
+        rawError /= count - warmup;
+        filteredError /= count - warmup;
+        assertTrue("filtered " + filteredError + " raw " + rawError, filteredError < rawError * 0.75);
+    }
+
+    @Test
+    public void constantVelocityIsTracked() {
+        final KalmanFilter filter = new KalmanFilter();
+        final Random random = new Random(2);
+        final double speed = 10;
+        double maxError = 0;
+        for (int i = 0; i < 120; i++) {
+            final double lat = LAT + speed * i * INTERVAL_MILLIS / 1000d / METERS_PER_DEGREE;
+            final double noise = random.nextGaussian() * 5 / METERS_PER_DEGREE;
+            filter.update(lat + noise, LON, 5, i * INTERVAL_MILLIS);
+            if (i >= 30) {
+                maxError = Math.max(maxError, distance(lat, LON, filter.getLatitude(), filter.getLongitude()));
+            }
+        }
+        // filter does not lag behind moving target once velocity converged
+        assertTrue("max error " + maxError, maxError < 10);
+        assertTrue(filter.getLatitude() > LAT);
+    }
+
+    @Test
+    public void longGapRestartsFilter() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.update(LAT, LON, ACCURACY, 0);
+        filter.update(LAT + 0.001, LON, ACCURACY, 1000);
+        filter.update(LAT + 0.1, LON + 0.1, ACCURACY, 1000 + 11 * 60 * 1000);
+        assertEquals(LAT + 0.1, filter.getLatitude(), 0);
+        assertEquals(LON + 0.1, filter.getLongitude(), 0);
+    }
+
+    @Test
+    public void timeGoingBackRestartsFilter() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.update(LAT, LON, ACCURACY, 5000);
+        filter.update(LAT + 0.01, LON, ACCURACY, 4000);
+        assertEquals(LAT + 0.01, filter.getLatitude(), 0);
+    }
+
+    @Test
+    public void accurateFixIsTrustedMore() {
+        final KalmanFilter precise = new KalmanFilter();
+        final KalmanFilter coarse = new KalmanFilter();
+        precise.update(LAT, LON, 50, 0);
+        coarse.update(LAT, LON, 50, 0);
+        final double lat = LAT + 100 / METERS_PER_DEGREE;
+        precise.update(lat, LON, 3, 1000);
+        coarse.update(lat, LON, 100, 1000);
+        assertTrue(distance(lat, LON, precise.getLatitude(), precise.getLongitude()) <
+                distance(lat, LON, coarse.getLatitude(), coarse.getLongitude()));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.arikgrahl.mobile.ProviderArbiter.PROVIDER_GPS;
+import static de.arikgrahl.mobile.ProviderArbiter.PROVIDER_NETWORK;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Provider arbitration with gps preferred over network
+ */
+
+public class ProviderArbiterTest {
+
+    private static final long MIN_TIME_MILLIS = 60 * 1000;
+    // min time plus half min time tolerance
+    private static final long WINDOW_MILLIS = 90 * 1000;
+
+    private ProviderArbiter arbiter;
+
+    @Before
+    public void setUp() {
+        arbiter = new ProviderArbiter();
+        arbiter.setMinTime(MIN_TIME_MILLIS);
+    }
+
+    @Test
+    public void firstFixIsAccepted() {
+        assertTrue(arbiter.accept(PROVIDER_NETWORK, 100, 1000));
+    }
+
+    @Test
+    public void networkFixInsideGpsWindowIsSkipped() {
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 1000));
+        assertFalse(arbiter.accept(PROVIDER_NETWORK, 20, 1000 + WINDOW_MILLIS - 1));
+    }
+
+    @Test
+    public void networkFixAfterGpsWindowIsAccepted() {
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 1000));
+        assertTrue(arbiter.accept(PROVIDER_NETWORK, 20, 1000 + WINDOW_MILLIS));
+    }
+
+    @Test
+    public void muchMoreAccurateNetworkFixIsAccepted() {
+        assertTrue(arbiter.accept(PROVIDER_GPS, 100, 1000));
+        assertFalse(arbiter.accept(PROVIDER_NETWORK, 51, 2000));
+        assertTrue(arbiter.accept(PROVIDER_NETWORK, 50, 3000));
+    }
+
+    @Test
+    public void unknownAccuracyDoesNotWin() {
+        assertTrue(arbiter.accept(PROVIDER_GPS, Float.NaN, 1000));
+        assertFalse(arbiter.accept(PROVIDER_NETWORK, 1, 2000));
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 3000));
+        assertFalse(arbiter.accept(PROVIDER_NETWORK, Float.NaN, 4000));
+    }
+
+    @Test
+    public void higherPriorityFixIsAlwaysAccepted() {
+        assertTrue(arbiter.accept(PROVIDER_NETWORK, 10, 1000));
+        assertTrue(arbiter.accept(PROVIDER_GPS, 100, 1000));
+    }
+
+    @Test
+    public void duplicateFixIsSkipped() {
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 1000));
+        assertFalse(arbiter.accept(PROVIDER_GPS, 10, 1000));
+        assertFalse(arbiter.accept("passive", 10, 1000));
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 1001));
+    }
+
+    @Test
+    public void zeroMinTimeHasNoWindow() {
+        arbiter.setMinTime(0);
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 1000));
+        assertTrue(arbiter.accept(PROVIDER_NETWORK, 100, 1001));
+    }
+
+    @Test
+    public void toleranceIsCapped() {
+        arbiter.setMinTime(60 * 60 * 1000);
+        assertTrue(arbiter.accept(PROVIDER_GPS, 10, 0));
+        // window is min time plus at most 5 minutes
+        assertFalse(arbiter.accept(PROVIDER_NETWORK, 20, 65 * 60 * 1000 - 1));
+        assertTrue(arbiter.accept(PROVIDER_NETWORK, 20, 65 * 60 * 1000));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay restart and failure traces through gps restart policy
+ */
+
+public class RestartPolicyTest {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    // gps produces no fixes for this time after restart
+    private static final long RESTART_GAP = 10 * SECOND;
+
+    /**
+     * Replay inaccurate fixes every second, collect allowed restart times
+     * @param policy Policy
+     * @param duration Trace duration (milliseconds)
+     * @return Restart times
+     */
+    private static List<Long> replayInaccurate(RestartPolicy policy, long duration) {
+        final List<Long> restarts = new ArrayList<>();
+        for (long now = 0; now < duration; now += SECOND) {
+            if (policy.shouldRestart(now)) {
+                restarts.add(now);
+            }
+        }
+        return restarts;
+    }
+
+    @Test
+    public void backoffDoublesUpToCap() {
+        final List<Long> restarts = replayInaccurate(new RestartPolicy(), 2 * HOUR);
+        final long[] expected = { 15, 30, 60, 120, 240, 480, 600, 600, 600 };
+        assertTrue(restarts.size() > expected.length);
+        assertEquals(0, (long) restarts.get(0));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("delay " + i, expected[i] * SECOND, restarts.get(i + 1) - restarts.get(i));
+        }
+        // capped at 10 minutes for rest of trace
+        for (int i = expected.length; i < restarts.size() - 1; i++) {
+            assertEquals(10 * MINUTE, restarts.get(i + 1) - restarts.get(i));
+        }
+    }
+
+    @Test
+    public void accurateFixResetsBackoff() {
+        final RestartPolicy policy = new RestartPolicy();
+        assertTrue(policy.shouldRestart(0));
+        assertFalse(policy.shouldRestart(14 * SECOND));
+        assertTrue(policy.shouldRestart(15 * SECOND));
+        assertFalse(policy.shouldRestart(44 * SECOND));
+        policy.reset();
+        assertTrue(policy.shouldRestart(45 * SECOND));
+        // backoff starts again from initial delay
+        assertFalse(policy.shouldRestart(59 * SECOND));
+        assertTrue(policy.shouldRestart(60 * SECOND));
+    }
+
+    @Test
+    public void restartsAreCountedInLastHour() {
+        final RestartPolicy policy = new RestartPolicy();
+        final List<Long> restarts = replayInaccurate(policy, 2 * HOUR);
+        final long now = 2 * HOUR;
+        int expected = 0;
+        for (long time : restarts) {
+            if (now - time < HOUR) {
+                expected++;
+            }
+        }
+        assertEquals(expected, policy.getRestartsLastHour(now));
+        // 10 minute cap allows at most 6 restarts per hour
+        assertEquals(6, expected);
+    }
+
+    @Test
+    public void hourlyCountIsLimitedByHistory() {
+        final RestartPolicy policy = new RestartPolicy();
+        // accurate fix after every restart keeps backoff at initial delay, 240 restarts per hour
+        int count = 0;
+        for (long now = 0; now < HOUR; now += SECOND) {
+            if (policy.shouldRestart(now)) {
+                count++;
+                policy.reset();
+            }
+        }
+        assertEquals(HOUR / SECOND, count);
+        assertEquals(64, policy.getRestartsLastHour(HOUR - SECOND));
+        assertEquals(0, policy.getRestartsLastHour(3 * HOUR));
+    }
+
+    /**
+     * Result of replayed urban canyon trace
+     */
+    private static class Replay {
+        private int restarts = 0;
+        private int accepted = 0;
+        private int received = 0;
+    }
+
+    /**
+     * Replay one hour of fixes, every second, with bursts of inaccurate fixes.
+     * Restart drops fixes during gps warm up.
+     * @param policy Policy or null to restart on every inaccurate fix
+     * @return Counts
+     */
+    private static Replay replayCanyon(RestartPolicy policy) {
+        final Random random = new Random(7);
+        final Replay replay = new Replay();
+        long restartedAt = -RESTART_GAP;
+        for (long now = 0; now < HOUR; now += SECOND) {
+            if (now - restartedAt < RESTART_GAP) {
+                continue;
+            }
+            replay.received++;
+            // inaccurate most of the time in canyon minutes, rarely in open sky
+            final boolean inCanyon = (now / (5 * MINUTE)) % 2 == 1;
+            final boolean isAccurate = random.nextDouble() > (inCanyon ? 0.8 : 0.05);
+            if (isAccurate) {
+                replay.accepted++;
+                if (policy != null) {
+                    policy.reset();
+                }
+            } else if (policy == null || policy.shouldRestart(now)) {
+                replay.restarts++;
+                restartedAt = now;
+            }
+        }
+        return replay;
+    }
+
+    @Test
+    public void backoffReducesRestartsAndKeepsFixYield() {
+        final Replay always = replayCanyon(null);
+        final Replay backoff = replayCanyon(new RestartPolicy());
+        // each restart re-registers providers and warms up gps: proxy for battery drain
+        System.out.printf("restart on every bad fix: %d restarts, %d of %d fixes accepted%n",
+                always.restarts, always.accepted, always.received);
+        System.out.printf("restart with backoff: %d restarts, %d of %d fixes accepted%n",
+                backoff.restarts, backoff.accepted, backoff.received);
+        assertTrue(backoff.restarts < always.restarts);
+        assertTrue(backoff.accepted > always.accepted);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sensor sample buffering and allocation free write path
+ */
+
+public class SampleBufferTest {
+
+    private static final int CAPACITY = 100;
+    private static final SensorChannel CHANNEL = SensorChannel.ACCELEROMETER;
+    private static final int VALUES_COUNT = CHANNEL.getValuesCount();
+
+    private MemoryStore store;
+    private SampleBuffer buffer;
+    private final float[] sample = new float[VALUES_COUNT];
+
+    /**
+     * Store keeping last written batch in preallocated arrays
+     */
+    private static class MemoryStore implements SampleStore {
+        private final long[] times = new long[CAPACITY];
+        private final float[] values = new float[CAPACITY * VALUES_COUNT];
+        private int count = 0;
+        private int writes = 0;
+        private long total = 0;
+        private boolean isFailing = false;
+
+        @Override
+        public boolean write(Runnable task) {
+            if (isFailing) {
+                return false;
+            }
+            task.run();
+            writes++;
+            return true;
+        }
+
+        @Override
+        public void writeSamples(SensorChannel channel, long[] times, float[] values, int count) {
+            System.arraycopy(times, 0, this.times, 0, count);
+            System.arraycopy(values, 0, this.values, 0, count * channel.getValuesCount());
+            this.count = count;
+            total += count;
+        }
+
+        @Override
+        public void updateTrackCompression(long samples, long storedSamples) {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        buffer = new SampleBuffer(CHANNEL, store);
+    }
+
+    /**
+     * Add sample with values derived from time
+     * @param time Time
+     * @return True if buffer was flushed
+     */
+    private boolean add(long time) {
+        for (int j = 0; j < VALUES_COUNT; j++) {
+            sample[j] = time + j / 10f;
+        }
+        return buffer.add(time, sample);
+    }
+
+    @Test
+    public void fullBufferIsWrittenInOneBatch() {
+        for (int i = 0; i < CAPACITY - 1; i++) {
+            assertFalse(add(i));
+        }
+        assertEquals(0, store.writes);
+        assertTrue(add(CAPACITY - 1));
+        assertEquals(1, store.writes);
+        assertEquals(CAPACITY, store.count);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(i, store.times[i]);
+            for (int j = 0; j < VALUES_COUNT; j++) {
+                assertEquals(i + j / 10f, store.values[i * VALUES_COUNT + j], 0);
+            }
+        }
+    }
+
+    @Test
+    public void flushWritesPendingSamples() {
+        add(1);
+        add(2);
+        buffer.flush();
+        assertEquals(1, store.writes);
+        assertEquals(2, store.count);
+        // empty buffer is not written
+        buffer.flush();
+        assertEquals(1, store.writes);
+    }
+
+    @Test
+    public void failedWriteDropsSamples() {
+        store.isFailing = true;
+        add(1);
+        buffer.flush();
+        store.isFailing = false;
+        add(2);
+        buffer.flush();
+        assertEquals(1, store.writes);
+        assertEquals(1, store.count);
+        assertEquals(2, store.times[0]);
+    }
+
+    @Test
+    public void addAndFlushDoNotAllocate() {
+        final Allocations allocations = new Allocations();
+        // warm up compiler and metrics
+        for (int i = 0; i < 100000; i++) {
+            add(i);
+        }
+        final int count = 100000;
+        final long bytes = allocations.measure(() -> {
+            for (int i = 0; i < count; i++) {
+                add(i);
+            }
+            buffer.flush();
+        });
+        assertTrue(store.total >= 2 * count);
+        assertEquals(0, bytes);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.hardware.SensorEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sensor sample path from sensor event to database writer:
+ * decimation, clock mapping, metrics, live stream aggregates, compression,
+ * buffering and writer transaction. Database statements are replaced by in-memory store.
+ */
+
+public class SensorSamplerTest {
+
+    private static final SensorChannel CHANNEL = SensorChannel.ACCELEROMETER;
+    private static final int VALUES_COUNT = CHANNEL.getValuesCount();
+    // sensor delivers 200 Hz, sampler keeps 100 Hz
+    private static final long EVENT_PERIOD_NANOS = 5000000;
+    private static final long FREQUENCY = 100;
+    private static final long START_NANOS = 1000000000000L;
+    private static final int STORE_CAPACITY = 1000;
+
+    private TestWriter writer;
+    private MemoryStore store;
+    private SensorEvent event;
+    private long timestamp;
+
+    /**
+     * Writer without database transactions, remembers its thread
+     */
+    private static class TestWriter extends DbWriter {
+        private volatile Thread thread;
+
+        @Override
+        void beginTransaction(SQLiteDatabase database) {
+            thread = Thread.currentThread();
+        }
+
+        @Override
+        void setTransactionSuccessful(SQLiteDatabase database) {
+        }
+
+        @Override
+        void endTransaction(SQLiteDatabase database) {
+        }
+    }
+
+    /**
+     * Store writing through test writer into preallocated ring of samples
+     */
+    private static class MemoryStore implements SampleStore {
+        private final DbWriter writer;
+        private final long[] times = new long[STORE_CAPACITY];
+        private final float[] values = new float[STORE_CAPACITY * VALUES_COUNT];
+        private final Runnable compressionTask = this::writeCompression;
+        private long total = 0;
+        private long received = 0;
+        private long stored = 0;
+        private long pendingReceived;
+        private long pendingStored;
+
+        MemoryStore(DbWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public boolean write(Runnable task) {
+            return writer.run(null, task);
+        }
+
+        @Override
+        public void writeSamples(SensorChannel channel, long[] times, float[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                final int slot = (int) (total++ % STORE_CAPACITY);
+                this.times[slot] = times[i];
+                System.arraycopy(values, i * VALUES_COUNT, this.values, slot * VALUES_COUNT, VALUES_COUNT);
+            }
+        }
+
+        @Override
+        public void updateTrackCompression(long samples, long storedSamples) {
+            pendingReceived = samples;
+            pendingStored = storedSamples;
+            writer.run(null, compressionTask);
+        }
+
+        private void writeCompression() {
+            received += pendingReceived;
+            stored += pendingStored;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        writer = new TestWriter();
+        store = new MemoryStore(writer);
+        event = newEvent();
+        timestamp = START_NANOS;
+        // live stream aggregates samples only while some client is registered
+        final Field isActive = LiveStream.class.getDeclaredField("isActive");
+        isActive.setAccessible(true);
+        isActive.setBoolean(LiveStream.getInstance(), true);
+    }
+
+    /**
+     * Create sensor event, its constructor is not public
+     * @return Event
+     * @throws Exception Reflection error
+     */
+    private static SensorEvent newEvent() throws Exception {
+        final Constructor<SensorEvent> constructor = SensorEvent.class.getDeclaredConstructor(int.class);
+        constructor.setAccessible(true);
+        final SensorEvent event = constructor.newInstance(VALUES_COUNT);
+        if (event.values == null) {
+            // framework stub does not run constructor body
+            final Field values = SensorEvent.class.getDeclaredField("values");
+            values.setAccessible(true);
+            values.set(event, new float[VALUES_COUNT]);
+        }
+        return event;
+    }
+
+    /**
+     * Deliver next sensor event to sampler
+     * @param sampler Sampler
+     * @param value Value of all axes
+     */
+    private void deliver(SensorSampler sampler, float value) {
+        timestamp += EVENT_PERIOD_NANOS;
+        event.timestamp = timestamp;
+        for (int j = 0; j < VALUES_COUNT; j++) {
+            event.values[j] = value + j;
+        }
+        sampler.onSensorChanged(event);
+    }
+
+    @Test
+    public void decimatedSamplesAreStoredInOrder() {
+        final SensorSampler sampler = new SensorSampler(CHANNEL, FREQUENCY, 0, new SampleClock(), store);
+        for (int i = 0; i < 1000; i++) {
+            deliver(sampler, i);
+        }
+        sampler.flush();
+        assertEquals(500, store.total);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(2 * i, store.values[i * VALUES_COUNT], 0);
+            assertEquals(2 * i + 2, store.values[i * VALUES_COUNT + 2], 0);
+            if (i > 0) {
+                assertEquals(10, store.times[i] - store.times[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void compressedSamplesAndStatisticsAreStored() {
+        final SensorSampler sampler = new SensorSampler(CHANNEL, FREQUENCY, 0.5f, new SampleClock(), store);
+        // linear ramp is compressed to its end points
+        for (int i = 0; i < 1000; i++) {
+            deliver(sampler, i * 0.01f);
+        }
+        sampler.flush();
+        assertEquals(500, store.received);
+        assertEquals(store.total, store.stored);
+        assertTrue("stored " + store.total, store.total < 10);
+    }
+
+    /**
+     * Drive sampler until writer thread is started and buffers have grown
+     * @param sampler Sampler
+     * @param count Number of events
+     */
+    private void run(SensorSampler sampler, int count) {
+        for (int i = 0; i < count; i++) {
+            deliver(sampler, (i % 100) * 0.37f);
+        }
+        sampler.flush();
+    }
+
+    @Test
+    public void samplePathDoesNotAllocate() {
+        final Allocations allocations = new Allocations();
+        final SensorSampler sampler = new SensorSampler(CHANNEL, FREQUENCY, 0, new SampleClock(), store);
+        run(sampler, 200000);
+        final long bytes = allocations.measure(() -> run(sampler, 200000), writer.thread);
+        assertEquals(0, bytes);
+    }
+
+    @Test
+    public void compressedSamplePathDoesNotAllocate() {
+        final Allocations allocations = new Allocations();
+        final SensorSampler sampler = new SensorSampler(CHANNEL, FREQUENCY, 0.1f, new SampleClock(), store);
+        run(sampler, 200000);
+        final long bytes = allocations.measure(() -> run(sampler, 200000), writer.thread);
+        assertEquals(0, bytes);
+    }
+
+    @Test
+    public void samplePathBenchmark() {
+        final int events = 400000;
+        for (float deviation : new float[] { 0, 0.1f }) {
+            final SensorSampler sampler = new SensorSampler(CHANNEL, FREQUENCY, deviation, new SampleClock(), store);
+            run(sampler, events);
+            final long start = System.nanoTime();
+            run(sampler, events);
+            final double nanos = (System.nanoTime() - start) / (double) events;
+            System.out.printf("sensor path (deviation %.1f): %.1f ns/event, %d transactions%n",
+                    deviation, nanos, writer.getTransactionsCount());
+        }
+    }
+}
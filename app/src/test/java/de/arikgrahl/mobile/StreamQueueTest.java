@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Live stream client queue backpressure, replayed on simulated clock
+ */
+
+public class StreamQueueTest {
+
+    private static final int CAPACITY = 32;
+    private static final int WINDOW = 16;
+    private static final long SECOND = 1000000000L;
+    private static final long MILLISECOND = 1000000L;
+
+    private final StreamQueue<Integer> queue = new StreamQueue<>(CAPACITY, WINDOW, SECOND, 0);
+    private final List<Integer> received = new ArrayList<>();
+
+    /**
+     * Send queued messages within budget, as dispatcher does
+     * @param now Current time (nanoseconds)
+     * @return Number of sent messages
+     */
+    private int dispatch(long now) {
+        int count = 0;
+        Integer msg;
+        while ((msg = queue.poll(now)) != null) {
+            received.add(msg);
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void fastClientReceivesEverything() {
+        for (int i = 0; i < 1000; i++) {
+            final long now = i * 10 * MILLISECOND;
+            assertNull(queue.offer(i));
+            assertEquals(1, dispatch(now));
+            queue.ack(1);
+        }
+        assertEquals(1000, received.size());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void slowClientKeepsReceivingNewestData() {
+        // producer publishes every 10 ms, client processes one message per 100 ms
+        int pending = 0;
+        int lastProduced = 0;
+        for (int i = 0; i < 1000; i++) {
+            final long now = i * 10 * MILLISECOND;
+            queue.offer(i);
+            lastProduced = i;
+            pending += dispatch(now);
+            assertTrue(queue.size() <= CAPACITY);
+            if (i % 10 == 0 && pending > 0) {
+                queue.ack(1);
+                pending--;
+            }
+        }
+        assertTrue(queue.getDroppedCount() > 0);
+        // client catches up with newest data after producer stops
+        for (int s = 1; s <= 3; s++) {
+            dispatch((1000 * 10 + s * 1000) * MILLISECOND);
+        }
+        assertEquals(0, queue.size());
+        assertEquals(lastProduced, (int) received.get(received.size() - 1));
+        // received messages are in order
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue(received.get(i) > received.get(i - 1));
+        }
+    }
+
+    @Test
+    public void clientWithoutAcknowledgementsIsLimitedPerPeriod() {
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(i);
+        }
+        assertEquals(WINDOW, dispatch(0));
+        assertEquals(0, dispatch(SECOND - 1));
+        assertEquals(WINDOW, dispatch(SECOND));
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void acknowledgementRestoresBudget() {
+        for (int i = 0; i < WINDOW + 4; i++) {
+            queue.offer(i);
+        }
+        assertEquals(WINDOW, dispatch(0));
+        queue.ack(3);
+        assertEquals(3, dispatch(1));
+        // acknowledging more than sent does not grow budget beyond window
+        queue.ack(1000);
+        for (int i = 0; i < 2 * WINDOW; i++) {
+            queue.offer(i);
+        }
+        assertEquals(WINDOW, dispatch(2));
+    }
+
+    @Test
+    public void fullQueueDropsOldest() {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertNull(queue.offer(i));
+        }
+        assertEquals(0, (int) queue.offer(CAPACITY));
+        assertEquals(1, (int) queue.offer(CAPACITY + 1));
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(2, (int) queue.remove());
+    }
+}
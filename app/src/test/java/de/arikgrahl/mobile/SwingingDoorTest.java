@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Swinging door compression bound and reader side reconstruction
+ */
+
+public class SwingingDoorTest {
+
+    private static final int VALUES_COUNT = 3;
+    private static final long PERIOD_MILLIS = 10;
+
+    private final List<Long> storedTimes = new ArrayList<>();
+    private final List<float[]> storedValues = new ArrayList<>();
+
+    /**
+     * Compress samples, collect stored ones
+     * @param door Compressor
+     * @param samples Samples
+     */
+    private void compress(SwingingDoor door, float[][] samples) {
+        for (int i = 0; i < samples.length; i++) {
+            final long time = i * PERIOD_MILLIS;
+            if (door.offer(time * 1000000, time, samples[i])) {
+                store(door);
+            }
+        }
+        if (door.flush()) {
+            store(door);
+        }
+    }
+
+    /**
+     * Copy sample to store
+     * @param door Compressor
+     */
+    private void store(SwingingDoor door) {
+        storedTimes.add(door.getTime());
+        storedValues.add(door.getValues().clone());
+    }
+
+    /**
+     * Get accelerometer like signal
+     * @param count Samples count
+     * @param noise Noise standard deviation
+     * @return Samples
+     */
+    private static float[][] signal(int count, double noise) {
+        final Random random = new Random(1);
+        final float[][] samples = new float[count][VALUES_COUNT];
+        for (int i = 0; i < count; i++) {
+            final double t = i * PERIOD_MILLIS / 1000d;
+            samples[i][0] = (float) (Math.sin(2 * Math.PI * 0.5 * t) + noise * random.nextGaussian());
+            samples[i][1] = (float) (0.3 * Math.cos(2 * Math.PI * 1.3 * t) + noise * random.nextGaussian());
+            samples[i][2] = (float) (9.81 + noise * random.nextGaussian());
+        }
+        return samples;
+    }
+
+    @Test
+    public void droppedSamplesAreWithinDeviation() {
+        final float deviation = 0.1f;
+        final float[][] samples = signal(3000, 0.02);
+        compress(new SwingingDoor(VALUES_COUNT, deviation), samples);
+        assertEquals(0, (long) storedTimes.get(0));
+        assertEquals((samples.length - 1) * PERIOD_MILLIS, (long) storedTimes.get(storedTimes.size() - 1));
+        int segment = 0;
+        for (int i = 0; i < samples.length; i++) {
+            final long time = i * PERIOD_MILLIS;
+            while (storedTimes.get(segment + 1) < time) {
+                segment++;
+            }
+            final long time0 = storedTimes.get(segment);
+            final long time1 = storedTimes.get(segment + 1);
+            for (int j = 0; j < VALUES_COUNT; j++) {
+                final float value0 = storedValues.get(segment)[j];
+                final float value1 = storedValues.get(segment + 1)[j];
+                final double line = value0 + (value1 - value0) * (double) (time - time0) / (time1 - time0);
+                assertEquals("sample " + i + " value " + j, samples[i][j], line, deviation + 1e-4);
+            }
+        }
+        assertTrue("stored " + storedTimes.size(), storedTimes.size() < samples.length / 5);
+    }
+
+    @Test
+    public void reconstructedSamplesAreWithinDeviation() {
+        final float deviation = 0.05f;
+        final float[][] samples = signal(5000, 0.01);
+        compress(new SwingingDoor(VALUES_COUNT, deviation), samples);
+        // stored series as read back from samples table
+        final int count = storedTimes.size();
+        final long[] times = new long[count];
+        final float[] values = new float[count * VALUES_COUNT];
+        for (int i = 0; i < count; i++) {
+            times[i] = storedTimes.get(i);
+            System.arraycopy(storedValues.get(i), 0, values, i * VALUES_COUNT, VALUES_COUNT);
+        }
+        final float[] out = new float[VALUES_COUNT];
+        for (int i = 0; i < samples.length; i++) {
+            assertTrue(SwingingDoor.reconstruct(times, values, count, VALUES_COUNT, i * PERIOD_MILLIS, out));
+            for (int j = 0; j < VALUES_COUNT; j++) {
+                assertEquals("sample " + i + " value " + j, samples[i][j], out[j], deviation + 1e-4);
+            }
+        }
+        assertFalse(SwingingDoor.reconstruct(times, values, count, VALUES_COUNT, -1, out));
+        assertFalse(SwingingDoor.reconstruct(times, values, count, VALUES_COUNT, samples.length * PERIOD_MILLIS, out));
+    }
+
+    @Test
+    public void storedSamplesAreReconstructedExactly() {
+        final long[] times = { 0, 10, 30 };
+        final float[] values = { 1, -1, 3, 1, 0, 0 };
+        final float[] out = new float[2];
+        assertTrue(SwingingDoor.reconstruct(times, values, 3, 2, 10, out));
+        assertEquals(3, out[0], 0);
+        assertEquals(1, out[1], 0);
+        assertTrue(SwingingDoor.reconstruct(times, values, 3, 2, 30, out));
+        assertEquals(0, out[0], 0);
+        assertTrue(SwingingDoor.reconstruct(times, values, 3, 2, 20, out));
+        assertEquals(1.5, out[0], 1e-6);
+        assertEquals(0.5, out[1], 1e-6);
+    }
+
+    @Test
+    public void constantSignalStoresEndsOnly() {
+        final float[][] samples = new float[100][VALUES_COUNT];
+        final SwingingDoor door = new SwingingDoor(VALUES_COUNT, 0.05f);
+        compress(door, samples);
+        assertEquals(2, storedTimes.size());
+        assertEquals(100, door.takeReceivedCount());
+        assertEquals(2, door.takeStoredCount());
+        assertEquals(0, door.takeReceivedCount());
+    }
+
+    @Test
+    public void stepIsStored() {
+        final float[][] samples = new float[10][VALUES_COUNT];
+        for (int i = 5; i < samples.length; i++) {
+            samples[i][1] = 1;
+        }
+        compress(new SwingingDoor(VALUES_COUNT, 0.05f), samples);
+        // samples around step are kept
+        assertTrue(storedTimes.contains(4 * PERIOD_MILLIS));
+        assertTrue(storedTimes.contains(5 * PERIOD_MILLIS));
+    }
+}
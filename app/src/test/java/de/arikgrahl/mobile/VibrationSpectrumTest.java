@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 Bartek Fabiszewski
+ * http://www.fabiszewski.net
+ *
+ * This file is part of mobile-android.
+ * Licensed under GPL, either version 3, or any later.
+ * See <http://www.gnu.org/licenses/>
+ */
+
+package de.arikgrahl.mobile;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Vibration spectrum correctness and cost per window
+ */
+
+public class VibrationSpectrumTest {
+
+    private static final float RATE = 100;
+    private static final long NANOS_PER_SAMPLE = (long) (1e9 / RATE);
+
+    /**
+     * Get window of acceleration magnitudes: gravity, sine and noise
+     * @param size Window size
+     * @param frequency Sine frequency (Hz)
+     * @param amplitude Sine amplitude (m/s^2)
+     * @param noise Noise standard deviation (m/s^2)
+     * @return Samples
+     */
+    private static float[] signal(int size, double frequency, double amplitude, double noise) {
+        final Random random = new Random(1);
+        final float[] samples = new float[size];
+        for (int i = 0; i < size; i++) {
+            samples[i] = (float) (9.81 + amplitude * Math.sin(2 * Math.PI * frequency * i / RATE)
+                    + noise * random.nextGaussian());
+        }
+        return samples;
+    }
+
+    /**
+     * Get duration of window sampled at test rate
+     * @param size Window size
+     * @return Duration between first and last sample (nanoseconds)
+     */
+    private static long duration(int size) {
+        return (size - 1) * NANOS_PER_SAMPLE;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePowerOfTwo() {
+        new VibrationSpectrum(300);
+    }
+
+    @Test
+    public void rateIsMeasured() {
+        final VibrationSpectrum spectrum = new VibrationSpectrum(256);
+        spectrum.compute(signal(256, 10, 1, 0), duration(256));
+        assertEquals(RATE, spectrum.getRate(), 0.01);
+    }
+
+    @Test
+    public void dominantFrequencyIsDetected() {
+        for (int size : new int[] { 256, 1024 }) {
+            final VibrationSpectrum spectrum = new VibrationSpectrum(size);
+            spectrum.compute(signal(size, 12.5, 1, 0.2), duration(size));
+            assertEquals(12.5, spectrum.getDominant(), RATE / size);
+            // 16 bands of 50 Hz / 16 each, 12.5 Hz is in band 4
+            final float[] energies = spectrum.getEnergies();
+            for (int b = 0; b < VibrationSpectrum.BANDS_COUNT; b++) {
+                assertTrue(b == 4 || energies[b] < energies[4]);
+            }
+        }
+    }
+
+    @Test
+    public void energyApproximatesVariance() {
+        final int size = 1024;
+        final VibrationSpectrum spectrum = new VibrationSpectrum(size);
+        final double amplitude = 2;
+        spectrum.compute(signal(size, 7, amplitude, 0), duration(size));
+        float sum = 0;
+        for (float energy : spectrum.getEnergies()) {
+            sum += energy;
+        }
+        // variance of sine is half its squared amplitude
+        assertEquals(amplitude * amplitude / 2, sum, 0.1 * amplitude * amplitude / 2);
+    }
+
+    @Test
+    public void constantSignalHasNoEnergy() {
+        final VibrationSpectrum spectrum = new VibrationSpectrum(256);
+        spectrum.compute(signal(256, 10, 0, 0), duration(256));
+        for (float energy : spectrum.getEnergies()) {
+            assertEquals(0, energy, 1e-6);
+        }
+    }
+
+    @Test
+    public void windowComputationIsCheapAndAllocationFree() {
+        final Allocations allocations = new Allocations();
+        for (int size : new int[] { 256, 1024 }) {
+            final VibrationSpectrum spectrum = new VibrationSpectrum(size);
+            final float[] samples = signal(size, 12.5, 1, 0.2);
+            final long duration = duration(size);
+            // warm up compiler
+            for (int i = 0; i < 10000; i++) {
+                spectrum.compute(samples, duration);
+            }
+            final int windows = 5000;
+            final long bytes = allocations.measure(() -> {
+                for (int i = 0; i < windows; i++) {
+                    spectrum.compute(samples, duration);
+                }
+            });
+            final long start = System.nanoTime();
+            for (int i = 0; i < windows; i++) {
+                spectrum.compute(samples, duration);
+            }
+            final long nanosPerWindow = (System.nanoTime() - start) / windows;
+            System.out.println(String.format(Locale.US, "VibrationSpectrum %d: %d ns/window, %d windows/s, %d bytes/window",
+                    size, nanosPerWindow, 1000000000L / Math.max(nanosPerWindow, 1), bytes / windows));
+            assertEquals(0, bytes / windows);
+            // window covers seconds of samples, computation must take only small fraction of it
+            assertTrue(nanosPerWindow < duration / 100);
+        }
+    }
+}